@@ -70,10 +70,29 @@ public interface GameDatastore {
 	
 	public abstract GameRecord newGameRecord();
 	
+	/**
+	 * Make sure new game records get ids above an id that's already in use,
+	 * e.g. by a game recovered from its journal after a restart.
+	 * 
+	 * @param gameId
+	 */
+	public abstract void reserveGameIds(long gameId);
+	
 	public abstract PlayerAuthtoken newAuthToken(GamePlayer player, GameRecord gameRecord); 
 	
 	public abstract List<PlayerAuthtoken> getAuthtokens(long gameId);
 	
+	/**
+	 * Save a player's existing token again if the datastore doesn't have it,
+	 * e.g. for a game recovered from its journal after a restart.
+	 * 
+	 * @param player
+	 * @param gameId
+	 * @param token
+	 * @return
+	 */
+	public abstract PlayerAuthtoken restoreAuthToken(GamePlayer player, long gameId, String token);
+	
 	public abstract void createPrototype(EntityPrototype card);
 
 	/**
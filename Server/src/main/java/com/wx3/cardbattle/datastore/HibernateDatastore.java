@@ -25,22 +25,27 @@ package com.wx3.cardbattle.datastore;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.service.ServiceRegistry;
 
 import com.wx3.cardbattle.game.EntityPrototype;
+import com.wx3.cardbattle.game.GameInstance;
 import com.wx3.cardbattle.game.GamePlayer;
 import com.wx3.cardbattle.game.User;
 import com.wx3.cardbattle.game.rules.EntityRule;
 import com.wx3.cardbattle.game.rules.PlayValidator;
+import com.wx3.cardbattle.game.rules.RuleEngine;
 
 /**
  * This implementation handles long-term storage via Hibernate, so 
@@ -72,14 +77,23 @@ public class HibernateDatastore implements GameDatastore {
 	@Override
 	public void loadCache() {
 		Collection<EntityPrototype> cards = loadCards();
+		// Validators aren't cached by id, we just reach them through their cards:
+		Set<PlayValidator> validators = new HashSet<PlayValidator>();
 		for(EntityPrototype card : cards) {
 			cardsById.put(card.getId(), card);
 			cardsByName.put(card.getName(), card);
+			if(card.getValidator() != null) {
+				validators.add(card.getValidator());
+			}
 		}
 		Collection<EntityRule> rules = loadRules();
 		for(EntityRule rule : rules) {
 			rulesById.put(rule.getId(), rule);
 		}
+		// Compile the rules now so games only need to run compiled code:
+		RuleEngine ruleEngine = GameInstance.getDefaultRuleEngine();
+		ruleEngine.compileRules(rules);
+		ruleEngine.compileValidators(validators);
 	}
 	
 	/* (non-Javadoc)
@@ -186,6 +200,26 @@ public class HibernateDatastore implements GameDatastore {
     	return gameRecord;
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.wx3.cardbattle.datastore.GameDatastore#reserveGameIds(long)
+	 */
+	@Override
+	public void reserveGameIds(long gameId) {
+		Session session = sessionFactory.openSession();
+    	session.beginTransaction();
+    	// Take ids from the generator itself until it's past the one in use, 
+    	// which works whatever kind of generator the database has:
+    	Long max = (Long) session.createCriteria(GameRecord.class)
+    		.setProjection(Projections.max("gameId"))
+    		.uniqueResult();
+    	while(max == null || max < gameId) {
+    		GameRecord gameRecord = new GameRecord();
+    		session.save(gameRecord);
+    		max = gameRecord.getGameId();
+    	}
+    	session.getTransaction().commit();
+	}
+	
 	public PlayerAuthtoken newAuthToken(GamePlayer player, GameRecord gameRecord) {
 		Session session = sessionFactory.openSession();
     	session.beginTransaction();
@@ -210,6 +244,22 @@ public class HibernateDatastore implements GameDatastore {
     	return tokens;
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.wx3.cardbattle.datastore.GameDatastore#restoreAuthToken(com.wx3.cardbattle.game.GamePlayer, long, java.lang.String)
+	 */
+	@Override
+	public PlayerAuthtoken restoreAuthToken(GamePlayer player, long gameId, String token) {
+		Session session = sessionFactory.openSession();
+    	session.beginTransaction();
+    	PlayerAuthtoken authtoken = (PlayerAuthtoken) session.get(PlayerAuthtoken.class, token);
+    	if(authtoken == null) {
+    		authtoken = new PlayerAuthtoken(player, gameId, token);
+    		session.save(authtoken);
+    	}
+    	session.getTransaction().commit();
+    	return authtoken;
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.wx3.cardbattle.datastore.Datastore#createCard(com.wx3.cardbattle.game.Card)
 	 */
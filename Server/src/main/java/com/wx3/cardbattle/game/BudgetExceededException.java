@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+/**
+ * Thrown when a command exceeds its {@link CommandBudget}. By the time this
+ * reaches the caller of handleCommand, the game has been rolled back.
+ * 
+ * @author Kevin
+ *
+ */
+public class BudgetExceededException extends RuleException {
+	
+	private static final long serialVersionUID = 6003L;
+	
+	private final String ruleId;
+
+	public BudgetExceededException(String message, String ruleId) {
+		super(message + (ruleId != null ? " (last rule: " + ruleId + ")" : ""));
+		this.ruleId = ruleId;
+	}
+	
+	/**
+	 * @return The id of the last rule that fired before the budget ran out, 
+	 * which is normally the one responsible, or null if no rule fired.
+	 */
+	public String getRuleId() {
+		return ruleId;
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+/**
+ * Limits how much work a single command may cause, so that one runaway 
+ * cascade of rules can't hold up the thread processing it. A command that 
+ * exceeds its budget is aborted and the game is rolled back to its state
+ * before the command.
+ * <p>
+ * The budget is checked after each event is processed and whenever a rule
+ * queues an event, so a cascade of events, or a single rule that loops 
+ * queueing events (e.g. dealing damage in a loop), is stopped. A rule that 
+ * loops <b>without</b> calling back into the game can't be stopped: scripts
+ * have no safe interruption point, and killing the thread would leave the 
+ * game half updated. Such a rule holds its thread until it finishes.
+ * 
+ * @author Kevin
+ *
+ */
+public final class CommandBudget {
+	
+	public static final int DEFAULT_MAX_EVENTS = 1000;
+	
+	/**
+	 * Allows the default number of events and unlimited CPU time.
+	 */
+	public static final CommandBudget DEFAULT = new CommandBudget(DEFAULT_MAX_EVENTS, 0);
+	
+	private final int maxEvents;
+	private final long maxCpuNanos;
+	
+	/**
+	 * @param maxEvents		The maximum number of events a command can cause.
+	 * @param maxCpuMillis	The maximum CPU time for processing a command's 
+	 * events, or 0 for no limit.
+	 */
+	public CommandBudget(int maxEvents, long maxCpuMillis) {
+		if(maxEvents <= 0) {
+			throw new IllegalArgumentException("Max events must be positive");
+		}
+		if(maxCpuMillis < 0) {
+			throw new IllegalArgumentException("Max CPU time can't be negative");
+		}
+		this.maxEvents = maxEvents;
+		this.maxCpuNanos = maxCpuMillis * 1000000;
+	}
+	
+	public int getMaxEvents() {
+		return maxEvents;
+	}
+	
+	public long getMaxCpuNanos() {
+		return maxCpuNanos;
+	}
+	
+	public boolean isCpuLimited() {
+		return maxCpuNanos > 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "CommandBudget(" + maxEvents + " events, " + (maxCpuNanos / 1000000) + " ms)";
+	}
+
+}
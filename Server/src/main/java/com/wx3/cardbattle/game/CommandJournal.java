@@ -0,0 +1,508 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * An append-only journal of what happened in a game, so the game can be 
+ * rebuilt after a crash by replaying it (see {@link GameInstance#recover}).
+ * <p>
+ * Each game's journal is a directory of segment files, which are mapped 
+ * into memory and filled with records. A record is a length, a CRC of the
+ * data and the data itself: the record type, a tab and a JSON payload. A 
+ * zero length marks the end of the journal, and a record with a bad CRC 
+ * (from a crash part way through a write) is treated the same way.
+ * <p>
+ * Appending a record only queues it. Records are serialized and written by
+ * a single background thread shared by every journal. Shortly after a 
+ * record is appended, the thread writes all the records the journal has 
+ * queued and then forces them to disk once, so a busy game commits many 
+ * records at a time and the game's thread never waits for the disk. If the
+ * server crashes, only the records appended in the last few milliseconds 
+ * can be lost.
+ * 
+ * @author Kevin
+ *
+ */
+public final class CommandJournal {
+	
+	final static Logger logger = LoggerFactory.getLogger(CommandJournal.class);
+	
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+	
+	private static final String SEGMENT_SUFFIX = ".journal";
+	// Each record starts with its length and CRC:
+	private static final int RECORD_HEADER = 8;
+	
+	// Records refer to entities and players by id, so live game objects 
+	// that commands hold on to are left out:
+	private static final Gson gson = new GsonBuilder()
+		.setExclusionStrategies(new ExclusionStrategy() {
+			@Override
+			public boolean shouldSkipField(FieldAttributes f) {
+				return GameInstance.class.isAssignableFrom(f.getDeclaredClass()) || 
+						GameEntity.class.isAssignableFrom(f.getDeclaredClass()) || 
+						GamePlayer.class.isAssignableFrom(f.getDeclaredClass());
+			}
+			@Override
+			public boolean shouldSkipClass(Class<?> clazz) {
+				return false;
+			}
+		}).create();
+	
+	// How long a journal waits after a record is appended before committing,
+	// so it can commit the records that arrive in the meantime with it:
+	public static final long COMMIT_DELAY_MILLIS = 10;
+	
+	private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "CommandJournal writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * A record read back from a journal.
+	 */
+	public static final class Entry {
+		
+		private final String type;
+		private final String json;
+		
+		Entry(String type, String json) {
+			this.type = type;
+			this.json = json;
+		}
+		
+		public String getType() {
+			return type;
+		}
+		
+		public JsonElement getPayload() {
+			return new JsonParser().parse(json);
+		}
+		
+		@Override
+		public String toString() {
+			return type + " " + json;
+		}
+	}
+	
+	private static final class Record {
+		
+		final String type;
+		final Object payload;
+		
+		Record(String type, Object payload) {
+			this.type = type;
+			this.payload = payload;
+		}
+	}
+	
+	private final File directory;
+	private final int segmentSize;
+	
+	private final Queue<Record> pending = new ConcurrentLinkedQueue<Record>();
+	// Whether a commit has been queued on the writer thread:
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	
+	// Only used on the writer thread, once the journal is open:
+	private int segment;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private final CRC32 crc = new CRC32();
+	private boolean finished = false;
+	private volatile long committed = 0;
+	private volatile boolean failed = false;
+	// Set as soon as close is called, so later records are ignored:
+	private volatile boolean closed = false;
+	
+	private CommandJournal(File directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+	
+	/**
+	 * Get the directory of a game's journal.
+	 * 
+	 * @param root	The directory journals are kept in.
+	 * @param gameId
+	 * @return
+	 */
+	public static File getDirectory(File root, long gameId) {
+		return new File(root, "game" + gameId);
+	}
+	
+	/**
+	 * @param root	The directory journals are kept in.
+	 * @return The ids of the games that have journals.
+	 */
+	public static List<Long> findGames(File root) {
+		List<Long> ids = new ArrayList<Long>();
+		File[] files = root.listFiles();
+		if(files == null) return ids;
+		for(File file : files) {
+			if(file.isDirectory() && file.getName().matches("game\\d+")) {
+				ids.add(Long.parseLong(file.getName().substring(4)));
+			}
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+	
+	/**
+	 * Create a new journal for a game. If the game already has a journal, 
+	 * e.g. because game ids were reused after a restart, the old journal is 
+	 * moved aside rather than overwritten.
+	 * 
+	 * @param root	The directory journals are kept in.
+	 * @param gameId
+	 * @param segmentSize	The size of each segment file.
+	 * @return
+	 */
+	public static CommandJournal create(File root, long gameId, int segmentSize) {
+		File directory = getDirectory(root, gameId);
+		if(directory.exists()) {
+			File old = new File(root, directory.getName() + "-" + System.currentTimeMillis());
+			logger.warn("Game " + gameId + " already has a journal, moving it to " + old);
+			if(!directory.renameTo(old)) {
+				throw new RuntimeException("Failed to move journal " + directory);
+			}
+		}
+		if(!directory.mkdirs()) {
+			throw new RuntimeException("Failed to create journal " + directory);
+		}
+		// The players' auth tokens are journaled, so only we can read it:
+		try {
+			Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwx------"));
+		} catch (IOException | UnsupportedOperationException ex) {
+			logger.warn("Failed to make journal " + directory + " private: " + ex);
+		}
+		CommandJournal journal = new CommandJournal(directory, segmentSize);
+		try {
+			journal.openSegment(0, 0, segmentSize);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed to create journal " + directory, ex);
+		}
+		return journal;
+	}
+	
+	/**
+	 * Open a game's existing journal to append to it, after the game has 
+	 * been recovered from it. Appending starts after the last good record,
+	 * where {@link #read} stopped: any segments after a bad record are 
+	 * moved aside. 
+	 * 
+	 * @param root	The directory journals are kept in.
+	 * @param gameId
+	 * @param segmentSize	The size of any new segment files.
+	 * @return
+	 */
+	public static CommandJournal open(File root, long gameId, int segmentSize) {
+		File directory = getDirectory(root, gameId);
+		List<File> segments = listSegments(directory);
+		if(segments.isEmpty()) {
+			throw new RuntimeException("No journal in " + directory);
+		}
+		CommandJournal journal = new CommandJournal(directory, segmentSize);
+		try {
+			int index = 0;
+			while(index < segments.size() - 1 && isClean(segments.get(index))) {
+				++index;
+			}
+			for(int i = index + 1; i < segments.size(); i++) {
+				File segment = segments.get(i);
+				File aside = new File(directory, segment.getName() + ".bad");
+				logger.warn("Moving journal segment " + segment + " after a bad record to " + aside);
+				if(!segment.renameTo(aside)) {
+					throw new IOException("Failed to move " + segment);
+				}
+			}
+			journal.openSegment(index, (int) segments.get(index).length(), 0);
+			// Clear anything after the last good record, e.g. a record that 
+			// was only partly written, so it can't be mistaken for a new one:
+			int end = scan(journal.buffer, null);
+			journal.buffer.position(end);
+			while(journal.buffer.hasRemaining()) {
+				journal.buffer.put((byte) 0);
+			}
+			journal.buffer.position(end);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed to open journal " + directory, ex);
+		}
+		return journal;
+	}
+	
+	/**
+	 * Read every record in a game's journal, up to the first bad record 
+	 * (e.g. one that was only partly written). Nothing after a bad record 
+	 * is read, even in later segments, since replaying commands with one 
+	 * missing would give a different game.
+	 * 
+	 * @param root	The directory journals are kept in.
+	 * @param gameId
+	 * @return
+	 */
+	public static List<Entry> read(File root, long gameId) {
+		File directory = getDirectory(root, gameId);
+		List<Entry> entries = new ArrayList<Entry>();
+		for(File file : listSegments(directory)) {
+			try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				int end = scan(buffer, entries);
+				if(!isEnd(buffer, end)) {
+					logger.warn("Journal " + file + " has a bad record at " + end + ", ignoring the rest of the journal");
+					break;
+				}
+			} catch (IOException ex) {
+				throw new RuntimeException("Failed to read journal " + file, ex);
+			}
+		}
+		return entries;
+	}
+	
+	/**
+	 * Queue a record to be written. This never blocks on the disk; records 
+	 * are written in the order they were appended. 
+	 * 
+	 * @param type		The type of record.
+	 * @param payload	An object to be serialized with Gson. It shouldn't 
+	 * be changed after it's appended.
+	 */
+	public void append(String type, Object payload) {
+		if(closed || failed) return;
+		pending.add(new Record(type, payload));
+		if(scheduled.compareAndSet(false, true)) {
+			writer.schedule(this::commit, COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Wait until every record appended so far has been written. This waits
+	 * behind every other journal's queued writes, so games shouldn't call it
+	 * while handling a command.
+	 */
+	public void flush() {
+		try {
+			writer.submit(this::commit).get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("Failed to flush journal " + directory, ex.getCause());
+		}
+	}
+	
+	/**
+	 * Wait until everything queued on every journal so far is done, 
+	 * including closing and deleting them, e.g. before reading journals 
+	 * back or shutting down.
+	 */
+	public static void flushAll() {
+		try {
+			writer.submit(() -> {}).get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("Failed to flush journals", ex.getCause());
+		}
+	}
+	
+	/**
+	 * Close the journal. Records appended after it's closed are ignored. 
+	 * Queued records are still written and the files closed, but on the 
+	 * writer thread; this doesn't wait for them.
+	 */
+	public void close() {
+		if(closed) return;
+		closed = true;
+		writer.execute(this::finish);
+	}
+	
+	/**
+	 * Close the journal and delete its files, e.g. because the game is over
+	 * and will never need to be recovered. Like close, this doesn't wait.
+	 */
+	public void delete() {
+		close();
+		writer.execute(this::deleteFiles);
+	}
+	
+	/**
+	 * @return The number of records written to disk.
+	 */
+	public long getCommittedCount() {
+		return committed;
+	}
+	
+	public File getDirectory() {
+		return directory;
+	}
+	
+	private void finish() {
+		commit();
+		finished = true;
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			logger.warn("Failed to close journal " + directory, ex);
+		}
+	}
+	
+	private void deleteFiles() {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		if(!directory.delete()) {
+			logger.warn("Failed to delete journal " + directory);
+		}
+	}
+	
+	// Write everything that's queued, then force it to disk:
+	private void commit() {
+		scheduled.set(false);
+		if(finished || failed) return;
+		int count = 0;
+		try {
+			Record record;
+			while((record = pending.poll()) != null) {
+				write(record);
+				++count;
+			}
+			if(count > 0) {
+				buffer.force();
+				committed += count;
+			}
+		} catch (IOException | RuntimeException ex) {
+			// Losing the journal mustn't stop the game, but there's no point 
+			// writing records after one has been lost:
+			logger.error("Failed to write journal " + directory + ", journaling stopped", ex);
+			failed = true;
+			pending.clear();
+		}
+	}
+	
+	private void write(Record record) throws IOException {
+		byte[] data = (record.type + "\t" + gson.toJson(record.payload)).getBytes(StandardCharsets.UTF_8);
+		// Leave room for the zero length that marks the end:
+		int needed = RECORD_HEADER + data.length + 4;
+		if(buffer.remaining() < needed) {
+			buffer.force();
+			channel.close();
+			openSegment(segment + 1, 0, Math.max(segmentSize, needed));
+		}
+		crc.reset();
+		crc.update(data);
+		buffer.putInt(data.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(data);
+	}
+	
+	private void openSegment(int index, int minSize, int size) throws IOException {
+		File file = new File(directory, String.format("%08d", index) + SEGMENT_SUFFIX);
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(minSize, size));
+		segment = index;
+	}
+	
+	private static List<File> listSegments(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		if(files == null) return Collections.emptyList();
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+	
+	// Read the records from the start of a segment, adding them to entries 
+	// if it isn't null, and return the position of the end:
+	private static int scan(MappedByteBuffer buffer, List<Entry> entries) {
+		CRC32 crc = new CRC32();
+		while(buffer.remaining() >= RECORD_HEADER) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if(length <= 0 || length > buffer.remaining()) {
+				return start;
+			}
+			byte[] data = new byte[length];
+			buffer.get(data);
+			crc.reset();
+			crc.update(data);
+			if((int) crc.getValue() != checksum) {
+				return start;
+			}
+			if(entries != null) {
+				String record = new String(data, StandardCharsets.UTF_8);
+				int tab = record.indexOf('\t');
+				entries.add(new Entry(record.substring(0, tab), record.substring(tab + 1)));
+			}
+		}
+		return buffer.position();
+	}
+	
+	// A segment's records end where the length is zero, or where there's no
+	// room for another. Anywhere else, scanning stopped at a bad record:
+	private static boolean isEnd(MappedByteBuffer buffer, int position) {
+		return buffer.limit() - position < RECORD_HEADER || buffer.getInt(position) == 0;
+	}
+	
+	private static boolean isClean(File segment) throws IOException {
+		try(FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return isEnd(buffer, scan(buffer, null));
+		}
+	}
+
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.wx3.cardbattle.game.commands.GameCommand;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+import com.wx3.cardbattle.game.messages.GameEntityJsonSerializer;
+import com.wx3.cardbattle.game.rules.EntityRule;
+
+/**
+ * A record of everything that happened while a game handled one command: 
+ * the tree of events it caused, which rule fired on which entity for each 
+ * event, and how long each rule and each stat recalculation took. 
+ * <p>
+ * The events the command queued directly are the roots of the tree. Each 
+ * event lists the rules it triggered, and each rule lists the events it 
+ * queued, which were processed later. Games record traces when command 
+ * tracing is turned on (see {@link GameInstance#setCommandTracing}), and 
+ * keep the most recent ones so they can be looked up by command id. 
+ * 
+ * @author Kevin
+ *
+ */
+public final class CommandTrace {
+	
+	private static final Gson gson = new GsonBuilder()
+		.registerTypeAdapter(GameEntity.class, new GameEntityJsonSerializer())
+		.setPrettyPrinting()
+		.create();
+	
+	/**
+	 * An event and the rules it triggered.
+	 */
+	public static final class EventNode {
+		
+		private final String eventClass;
+		// Declared as an Object so the event is serialized as its actual class:
+		private final Object event;
+		private long nanos;
+		private final List<RuleNode> rules = new ArrayList<RuleNode>();
+		private final List<Long> recalculations = new ArrayList<Long>();
+		
+		EventNode(GameEvent event) {
+			this.eventClass = event.getClass().getSimpleName();
+			this.event = event;
+		}
+		
+		public String getEventClass() {
+			return eventClass;
+		}
+		
+		public GameEvent getEvent() {
+			return (GameEvent) event;
+		}
+		
+		/**
+		 * @return The time spent processing the event, including its rules 
+		 * and the stat recalculation that followed.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+		
+		public List<RuleNode> getRules() {
+			return rules;
+		}
+		
+		/**
+		 * @return The time taken by each stat recalculation after the event.
+		 */
+		public List<Long> getRecalculations() {
+			return recalculations;
+		}
+	}
+	
+	/**
+	 * A rule firing on an entity, and the events it queued.
+	 */
+	public static final class RuleNode {
+		
+		private final String ruleId;
+		private final int entityId;
+		private long nanos;
+		private final List<EventNode> events = new ArrayList<EventNode>();
+		private final List<Long> recalculations = new ArrayList<Long>();
+		
+		RuleNode(EntityRule rule, GameEntity entity) {
+			this.ruleId = rule.getId();
+			this.entityId = entity.getId();
+		}
+		
+		public String getRuleId() {
+			return ruleId;
+		}
+		
+		public int getEntityId() {
+			return entityId;
+		}
+		
+		public long getNanos() {
+			return nanos;
+		}
+		
+		public List<EventNode> getEvents() {
+			return events;
+		}
+		
+		/**
+		 * @return The time taken by each stat recalculation the rule caused, 
+		 * e.g. by adding a rule.
+		 */
+		public List<Long> getRecalculations() {
+			return recalculations;
+		}
+	}
+	
+	private final int commandId;
+	private final String commandClass;
+	private final String playerName;
+	private final long startTime = System.currentTimeMillis();
+	private long nanos;
+	private String error;
+	private final List<EventNode> events = new ArrayList<EventNode>();
+	private final List<Long> recalculations = new ArrayList<Long>();
+	
+	// Nodes for events that have been queued but not processed yet, and 
+	// where we are in the tree:
+	private transient final Map<GameEvent, EventNode> queued = new IdentityHashMap<GameEvent, EventNode>();
+	private transient EventNode currentEvent;
+	private transient RuleNode currentRule;
+	
+	CommandTrace(GameCommand<?> command) {
+		this.commandId = command.getId();
+		this.commandClass = command.getClass().getSimpleName();
+		this.playerName = command.getPlayerName();
+	}
+	
+	public int getCommandId() {
+		return commandId;
+	}
+	
+	public String getCommandClass() {
+		return commandClass;
+	}
+	
+	public String getPlayerName() {
+		return playerName;
+	}
+	
+	/**
+	 * @return When the command started, in milliseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	/**
+	 * @return The total time taken to handle the command.
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+	
+	/**
+	 * @return The error that aborted the command, or null.
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	/**
+	 * @return The events the command queued directly.
+	 */
+	public List<EventNode> getEvents() {
+		return events;
+	}
+	
+	/**
+	 * @return The time taken by each stat recalculation the command caused 
+	 * directly.
+	 */
+	public List<Long> getRecalculations() {
+		return recalculations;
+	}
+	
+	public String toJson() {
+		return gson.toJson(this);
+	}
+	
+	void eventQueued(GameEvent event) {
+		EventNode node = new EventNode(event);
+		if(currentRule != null) {
+			currentRule.events.add(node);
+		} else {
+			events.add(node);
+		}
+		queued.put(event, node);
+	}
+	
+	void eventStarted(GameEvent event) {
+		currentEvent = queued.remove(event);
+		// An event queued before the command started is treated as a root: 
+		if(currentEvent == null) {
+			currentEvent = new EventNode(event);
+			events.add(currentEvent);
+		}
+	}
+	
+	void eventFinished(long nanos) {
+		currentEvent.nanos = nanos;
+		currentEvent = null;
+	}
+	
+	void ruleStarted(EntityRule rule, GameEntity entity) {
+		currentRule = new RuleNode(rule, entity);
+		currentEvent.rules.add(currentRule);
+	}
+	
+	void ruleFinished(long nanos) {
+		currentRule.nanos = nanos;
+		currentRule = null;
+	}
+	
+	void recalculated(long nanos) {
+		if(currentRule != null) {
+			currentRule.recalculations.add(nanos);
+		} else if(currentEvent != null) {
+			currentEvent.recalculations.add(nanos);
+		} else {
+			recalculations.add(nanos);
+		}
+	}
+	
+	void finished(long nanos, String error) {
+		this.nanos = nanos;
+		this.error = error;
+		queued.clear();
+		currentEvent = null;
+		currentRule = null;
+	}
+
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An optional structure-of-arrays copy of the fields games filter their 
+ * entities on: for every entity in the entity list, in list order, its id,
+ * owner slot and tag mask are kept in parallel primitive arrays. Queries 
+ * like "the minions a player has in play" are then tight loops over those 
+ * arrays instead of streams over the entities, which matters on boards with
+ * many tokens and for AI search, which runs the same queries for every 
+ * candidate move.
+ * <p>
+ * Owners are compared by identity, like the entity queries they replace, 
+ * and only tags in the first {@link Tags#MASK_SIZE} ids can be queried. The 
+ * game keeps the columns in step with its entity list, and entities report
+ * tag and owner changes.
+ * <p>
+ * Stats and vars have no columns. None of the queries filter on them, and
+ * each entity already keeps them in int arrays indexed by registry id (see
+ * {@link EntityStats} and {@link EntityVars}). Copying them here would mean
+ * every stat recalculation and var change had to update the columns too.
+ *
+ * @author Kevin
+ *
+ * @param <T>
+ */
+public final class EntityColumns<T extends GameEntity> {
+	
+	// Owner slots for entities with no owner, and for owners no entity has:
+	private static final int NO_OWNER = -1;
+	private static final int UNKNOWN_OWNER = -2;
+	
+	private GameEntity[] entities = new GameEntity[64];
+	private int[] ids = new int[64];
+	private int[] owners = new int[64];
+	private long[] tagMasks = new long[64];
+	private int size;
+	
+	// Each entity's row plus one (so 0 means no row), by id:
+	private int[] rows = new int[64];
+	
+	private final List<String> ownerNames = new ArrayList<String>();
+	
+	EntityColumns() {}
+	
+	/**
+	 * Add an entity at the end of the columns.
+	 * 
+	 * @param entity
+	 */
+	void add(T entity) {
+		if(size == entities.length) {
+			int length = size * 2;
+			entities = Arrays.copyOf(entities, length);
+			ids = Arrays.copyOf(ids, length);
+			owners = Arrays.copyOf(owners, length);
+			tagMasks = Arrays.copyOf(tagMasks, length);
+		}
+		int id = entity.getId();
+		if(id >= rows.length) {
+			rows = Arrays.copyOf(rows, Math.max(id + 1, rows.length * 2));
+		}
+		entities[size] = entity;
+		ids[size] = id;
+		rows[id] = size + 1;
+		++size;
+		update(entity);
+	}
+	
+	/**
+	 * Update an entity's row after its tags or owner have changed.
+	 * 
+	 * @param entity
+	 */
+	void update(GameEntity entity) {
+		int id = entity.getId();
+		if(id >= rows.length || rows[id] == 0 || entities[rows[id] - 1] != entity) {
+			return;
+		}
+		int row = rows[id] - 1;
+		owners[row] = addOwner(entity.getOwner());
+		tagMasks[row] = entity.getTagMask();
+	}
+	
+	/**
+	 * Drop the rows of removed entities, keeping the others in order.
+	 */
+	void dropRemoved() {
+		int kept = 0;
+		for(int i = 0; i < size; i++) {
+			GameEntity entity = entities[i];
+			if(entity.isRemoved()) {
+				rows[ids[i]] = 0;
+				continue;
+			}
+			if(kept != i) {
+				entities[kept] = entity;
+				ids[kept] = ids[i];
+				owners[kept] = owners[i];
+				tagMasks[kept] = tagMasks[i];
+				rows[ids[kept]] = kept + 1;
+			}
+			++kept;
+		}
+		Arrays.fill(entities, kept, size, null);
+		size = kept;
+	}
+	
+	/**
+	 * Rebuild the columns from scratch, e.g. after the entity list has been 
+	 * restored.
+	 * 
+	 * @param list
+	 */
+	void rebuild(Collection<T> list) {
+		Arrays.fill(entities, 0, size, null);
+		Arrays.fill(rows, 0);
+		size = 0;
+		for(T entity : list) {
+			add(entity);
+		}
+	}
+	
+	/**
+	 * Get the entities owned by a player with all of the required tags and 
+	 * none of the excluded tags, in entity list order.
+	 * 
+	 * @param owner		The owner, or null for entities with no owner.
+	 * @param required	A mask from {@link Tags#mask(String...)}.
+	 * @param excluded	A mask from {@link Tags#mask(String...)}.
+	 * @return
+	 */
+	public List<T> selectOwnedBy(String owner, long required, long excluded) {
+		return select(findOwner(owner), true, required, excluded);
+	}
+	
+	/**
+	 * Get the entities <b>not</b> owned by a player with all of the required
+	 * tags and none of the excluded tags, in entity list order.
+	 * 
+	 * @param owner
+	 * @param required
+	 * @param excluded
+	 * @return
+	 */
+	public List<T> selectNotOwnedBy(String owner, long required, long excluded) {
+		return select(findOwner(owner), false, required, excluded);
+	}
+	
+	/**
+	 * Get the first entity owned by a player with all of the required tags.
+	 * 
+	 * @param owner
+	 * @param required
+	 * @return The entity, or null if there isn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	public T findOwnedBy(String owner, long required) {
+		int slot = findOwner(owner);
+		for(int i = 0; i < size; i++) {
+			if(owners[i] == slot && (tagMasks[i] & required) == required) {
+				return (T) entities[i];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The number of entities.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<T> select(int slot, boolean owned, long required, long excluded) {
+		List<T> selected = new ArrayList<T>();
+		for(int i = 0; i < size; i++) {
+			long tags = tagMasks[i];
+			if((owners[i] == slot) == owned && (tags & required) == required && (tags & excluded) == 0) {
+				selected.add((T) entities[i]);
+			}
+		}
+		return selected;
+	}
+	
+	private int addOwner(String owner) {
+		int slot = findOwner(owner);
+		if(slot == UNKNOWN_OWNER) {
+			slot = ownerNames.size();
+			ownerNames.add(owner);
+		}
+		return slot;
+	}
+	
+	private int findOwner(String owner) {
+		if(owner == null) {
+			return NO_OWNER;
+		}
+		for(int i = 0; i < ownerNames.size(); i++) {
+			if(ownerNames.get(i) == owner) {
+				return i;
+			}
+		}
+		return UNKNOWN_OWNER;
+	}
+
+}
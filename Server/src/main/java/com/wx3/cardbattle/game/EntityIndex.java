@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Index from entity id to the entities in a game's entity list, so looking 
+ * up an entity is a single array read. 
+ * <p>
+ * Entity ids are handed out in order starting from a small number, so the 
+ * index is simply an array indexed by id, which grows as entities are 
+ * spawned. The game keeps it in step with its entity list: entities are 
+ * added when they're spawned and removed when they're dropped from the list.
+ * 
+ * @author Kevin
+ *
+ * @param <T>
+ */
+class EntityIndex<T extends GameEntity> {
+	
+	private GameEntity[] entities = new GameEntity[64];
+	
+	void put(T entity) {
+		int id = entity.getId();
+		if(id >= entities.length) {
+			entities = Arrays.copyOf(entities, Math.max(id + 1, entities.length * 2));
+		}
+		entities[id] = entity;
+	}
+	
+	void remove(GameEntity entity) {
+		int id = entity.getId();
+		if(id < entities.length && entities[id] == entity) {
+			entities[id] = null;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	T get(int id) {
+		if(id < 0 || id >= entities.length) {
+			return null;
+		}
+		return (T) entities[id];
+	}
+	
+	/**
+	 * Re-index every entity, e.g. after the entity list has been restored.
+	 * 
+	 * @param list
+	 */
+	void rebuild(Collection<T> list) {
+		Arrays.fill(entities, null);
+		for(T entity : list) {
+			put(entity);
+		}
+	}
+
+}
@@ -23,70 +23,163 @@
  *******************************************************************************/
 package com.wx3.cardbattle.game;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Collections;
-
-import javax.persistence.Transient;
 
 /**
  * A collection of named, positive integer values, such as "MAX_HEALTH."
  * Stats have a base value and a current value, which is recalculated after
  * every event and may be modified by "Buff" rules.  
+ * <p>
+ * Stat names are registered in {@link #REGISTRY}, and the values are kept 
+ * in int arrays indexed by stat id. Since stats are never negative, a 
+ * negative value marks a stat the entity doesn't have.
  * 
  * @author Kevin
  *
  */
 public final class EntityStats {
+	
+	/**
+	 * The ids of all stat names.
+	 */
+	public static final NameRegistry REGISTRY = new NameRegistry();
+	
+	private static final int ABSENT = -1;
+	
+	private static final int[] EMPTY = new int[0];
 
-	private Map<String, Integer> baseValues = new HashMap<String,Integer>();
+	private int[] baseValues = EMPTY;
 	
-	@Transient
-	private Map<String, Integer> currentValues = new HashMap<String,Integer>();
+	private int[] currentValues = EMPTY;
+	
+	private final Map<String, Integer> currentView = new CurrentView();
 	
 	public EntityStats(){}
 	
 	// Copy constructor:
 	public EntityStats(EntityStats original) {
-		this.baseValues = new HashMap<String,Integer>(original.baseValues);
+		this.baseValues = original.baseValues.clone();
+		this.currentValues = new int[baseValues.length];
 		reset();
 	}
 	
 	public int getValue(String stat) {
-		if(currentValues.containsKey(stat)) {
-			return currentValues.get(stat);
+		return getValue(REGISTRY.getId(stat));
+	}
+	
+	public int getValue(int stat) {
+		if(stat < 0 || stat >= currentValues.length) {
+			return 0;
 		}
-		return 0;
+		return Math.max(currentValues[stat], 0);
 	}
 	
 	public int getBaseValue(String stat) {
-		if(baseValues.containsKey(stat)) {
-			return baseValues.get(stat);
+		return getBaseValue(REGISTRY.getId(stat));
+	}
+	
+	public int getBaseValue(int stat) {
+		if(stat < 0 || stat >= baseValues.length) {
+			return 0;
 		}
-		return 0;
+		return Math.max(baseValues[stat], 0);
 	}
 	
 	public void setBase(String stat, int val) {
+		setBase(REGISTRY.register(stat), val);
+	}
+	
+	public void setBase(int stat, int val) {
 		if(val < 0) {
 			throw new RuntimeException("Stats cannot be negative");
 		}
-		baseValues.put(stat, val);
-		currentValues.put(stat, val);
+		ensureCapacity(stat);
+		baseValues[stat] = val;
+		currentValues[stat] = val;
 	}
 	
 	public void buff(String stat, int amount) {
+		buff(REGISTRY.register(stat), amount);
+	}
+	
+	public void buff(int stat, int amount) {
 		int current = getValue(stat);
 		current += amount;
 		if(current < 0) current = 0;
-		currentValues.put(stat, current);
+		ensureCapacity(stat);
+		currentValues[stat] = current;
 	}
 	
+	/**
+	 * Reset the current values to base. This happens to every entity that
+	 * needs recalculating after every event, so it's just an array copy.
+	 */
 	public void reset() {
-		currentValues = new HashMap<String,Integer>(baseValues);
+		System.arraycopy(baseValues, 0, currentValues, 0, baseValues.length);
 	}
 	
+	/**
+	 * Copy another stats object's current (buffed) values, which the copy 
+	 * constructor resets to base.
+	 * 
+	 * @param original
+	 */
+	void copyCurrentValues(EntityStats original) {
+		currentValues = original.currentValues.clone();
+		if(baseValues.length < currentValues.length) {
+			baseValues = grow(baseValues, currentValues.length);
+		}
+	}
+	
+	/**
+	 * Get a read-only view of the current values by name. The view is live,
+	 * so copy it if it's used outside the game's lock.
+	 * 
+	 * @return
+	 */
 	public Map<String, Integer> getCurrentValues() {
-		return Collections.unmodifiableMap(currentValues);
+		return currentView;
+	}
+	
+	// Not anonymous, since Gson won't serialize anonymous classes:
+	private final class CurrentView extends NamedValuesView {
+		
+		CurrentView() {
+			super(REGISTRY);
+		}
+		
+		@Override
+		int length() {
+			return currentValues.length;
+		}
+		
+		@Override
+		boolean has(int id) {
+			return currentValues[id] != ABSENT;
+		}
+		
+		@Override
+		int value(int id) {
+			return currentValues[id];
+		}
+	}
+	
+	// Both arrays are always the same length, enough for every stat the 
+	// entity has:
+	private void ensureCapacity(int stat) {
+		if(stat >= baseValues.length) {
+			int length = Math.max(stat + 1, REGISTRY.size());
+			baseValues = grow(baseValues, length);
+			currentValues = grow(currentValues, length);
+		}
+	}
+	
+	private static int[] grow(int[] values, int length) {
+		int oldLength = values.length;
+		values = Arrays.copyOf(values, length);
+		Arrays.fill(values, oldLength, length, ABSENT);
+		return values;
 	}
 	
 }
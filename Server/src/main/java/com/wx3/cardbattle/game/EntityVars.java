@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An entity's vars: named integers like current health, which unlike 
+ * {@link EntityStats} aren't recalculated for buffs.
+ * <p>
+ * Var names are registered in {@link #REGISTRY}, and the values are kept in
+ * an int array indexed by var id, so reading and writing them never boxes.
+ * Vars can be negative, so a separate array records which vars have been 
+ * set.
+ * 
+ * @author Kevin
+ *
+ */
+public final class EntityVars {
+	
+	/**
+	 * The ids of all var names.
+	 */
+	public static final NameRegistry REGISTRY = new NameRegistry();
+	
+	private static final int[] EMPTY_VALUES = new int[0];
+	private static final boolean[] EMPTY_SET = new boolean[0];
+	
+	private int[] values = EMPTY_VALUES;
+	private boolean[] set = EMPTY_SET;
+	
+	private final Map<String, Integer> view = new View();
+	
+	public EntityVars(){}
+	
+	// Copy constructor:
+	public EntityVars(EntityVars original) {
+		this.values = original.values.clone();
+		this.set = original.set.clone();
+	}
+	
+	public int get(int var) {
+		if(var < 0 || var >= values.length) {
+			return 0;
+		}
+		return values[var];
+	}
+	
+	/**
+	 * Set a var.
+	 * 
+	 * @param var
+	 * @param val
+	 * @return True if the var's value changed (including if it wasn't set).
+	 */
+	public boolean set(int var, int val) {
+		if(var >= values.length) {
+			int length = Math.max(var + 1, REGISTRY.size());
+			values = Arrays.copyOf(values, length);
+			set = Arrays.copyOf(set, length);
+		}
+		boolean changed = !set[var] || values[var] != val;
+		values[var] = val;
+		set[var] = true;
+		return changed;
+	}
+	
+	/**
+	 * Get a read-only view of the vars that have been set by name. The view
+	 * is live, so copy it if it's used outside the game's lock.
+	 * 
+	 * @return
+	 */
+	public Map<String, Integer> getValues() {
+		return view;
+	}
+	
+	// Not anonymous, since Gson won't serialize anonymous classes:
+	private final class View extends NamedValuesView {
+		
+		View() {
+			super(REGISTRY);
+		}
+		
+		@Override
+		int length() {
+			return values.length;
+		}
+		
+		@Override
+		boolean has(int id) {
+			return set[id];
+		}
+		
+		@Override
+		int value(int id) {
+			return values[id];
+		}
+	}
+
+}
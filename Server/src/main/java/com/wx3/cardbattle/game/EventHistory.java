@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+
+/**
+ * The events a game has processed, in order. Only the most recent events 
+ * are kept in memory. Once there are more than the window size, older 
+ * events are written to a segment file on disk and dropped from memory, 
+ * so a long game doesn't hold on to every event (and the entities they 
+ * reference) for its whole life. 
+ * <p>
+ * Spilled events are stored as a line of JSON each, like the events sent
+ * to clients. Entity and player references are left out, so events read
+ * back from disk only have the ids. The history can be read a page at a 
+ * time with {@link #getPage}, or streamed with an iterator.
+ * 
+ * @author Kevin
+ *
+ */
+public final class EventHistory implements Iterable<GameEvent> {
+	
+	final static Logger logger = LoggerFactory.getLogger(EventHistory.class);
+	
+	/**
+	 * Window size to keep every event in memory.
+	 */
+	public static final int UNBOUNDED = 0;
+	
+	// We record the file offset of every PAGE_SIZE'th spilled event:
+	private static final int PAGE_SIZE = 64;
+	
+	// Events are serialized without entity or player references, since 
+	// those are live game objects:
+	private static final Gson gson = new GsonBuilder()
+		.setExclusionStrategies(new ExclusionStrategy() {
+			@Override
+			public boolean shouldSkipField(FieldAttributes f) {
+				return GameEntity.class.isAssignableFrom(f.getDeclaredClass()) || 
+						GamePlayer.class.isAssignableFrom(f.getDeclaredClass());
+			}
+			@Override
+			public boolean shouldSkipClass(Class<?> clazz) {
+				return false;
+			}
+		}).create();
+	
+	private final int window;
+	private final File directory;
+	private final String name;
+	
+	private final List<GameEvent> recent = new ArrayList<GameEvent>();
+	
+	// The segment file is only created if we need to spill:
+	private File file;
+	// Spilled events are written through a buffer to the end of the channel,
+	// which is also how truncation moves the write position back:
+	private FileChannel channel;
+	private OutputStream out;
+	private long fileLength = 0;
+	private int spilled = 0;
+	private long[] pageOffsets = new long[16];
+	private boolean spillFailed = false;
+	// Once closed, the segment file is gone and new events stay in memory:
+	private boolean closed = false;
+	
+	/**
+	 * Create a history that keeps every event in memory.
+	 */
+	public EventHistory() {
+		this(UNBOUNDED, null, null);
+	}
+	
+	/**
+	 * @param window	How many events to keep in memory, or UNBOUNDED.
+	 * @param directory	Where to create the segment file. If null, every 
+	 * event is kept in memory.
+	 * @param name		Used in the segment file name.
+	 */
+	public EventHistory(int window, File directory, String name) {
+		this.window = window;
+		this.directory = directory;
+		this.name = name;
+	}
+	
+	public synchronized void add(GameEvent event) {
+		recent.add(event);
+		// Spill in batches of a quarter of the window, so we don't shift
+		// the in-memory list on every event:
+		if(window > 0 && directory != null && !spillFailed && !closed && recent.size() >= window + Math.max(1, window / 4)) {
+			spill(recent.size() - window);
+		}
+	}
+	
+	/**
+	 * @return The total number of events, both in memory and on disk.
+	 */
+	public synchronized int size() {
+		return spilled + recent.size();
+	}
+	
+	/**
+	 * @return The number of events that have been written to disk.
+	 */
+	public synchronized int getSpilledCount() {
+		return spilled;
+	}
+	
+	/**
+	 * Get a range of events. Events that have been spilled to disk are read 
+	 * back, without their entity references. Once the history is closed, 
+	 * they're no longer available.
+	 * 
+	 * @param from	The index of the first event.
+	 * @param count	The maximum number of events to return.
+	 * @return
+	 */
+	public synchronized List<GameEvent> getPage(int from, int count) {
+		if(from < 0 || count < 0) {
+			throw new IllegalArgumentException("Invalid page: " + from + ", " + count);
+		}
+		int to = Math.min(size(), from + count);
+		List<GameEvent> page = new ArrayList<GameEvent>(Math.max(0, to - from));
+		if(from < spilled) {
+			page.addAll(readSpilled(from, Math.min(to, spilled)));
+		}
+		for(int i = Math.max(from, spilled); i < to; i++) {
+			page.add(recent.get(i - spilled));
+		}
+		return page;
+	}
+	
+	/**
+	 * @return The events that are still in memory, oldest first.
+	 */
+	public synchronized List<GameEvent> getRecent() {
+		return Collections.unmodifiableList(new ArrayList<GameEvent>(recent));
+	}
+	
+	/**
+	 * Iterate over the whole history, reading it from disk a page at a time. 
+	 */
+	@Override
+	public Iterator<GameEvent> iterator() {
+		return new Iterator<GameEvent>() {
+			
+			private int next = 0;
+			private List<GameEvent> page = Collections.emptyList();
+			private int pageStart = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size();
+			}
+
+			@Override
+			public GameEvent next() {
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				if(next >= pageStart + page.size()) {
+					pageStart = next;
+					page = getPage(next, PAGE_SIZE);
+				}
+				return page.get(next++ - pageStart);
+			}
+		};
+	}
+	
+	/**
+	 * Drop every event after the first <code>size</code>, e.g. to roll back
+	 * a command.
+	 * 
+	 * @param size
+	 */
+	synchronized void truncate(int size) {
+		if(size >= spilled) {
+			if(size - spilled < recent.size()) {
+				recent.subList(size - spilled, recent.size()).clear();
+			}
+			return;
+		}
+		try {
+			long offset = findOffset(size);
+			out.flush();
+			channel.truncate(offset);
+			channel.position(offset);
+			fileLength = offset;
+			spilled = size;
+			recent.clear();
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed to truncate event history " + file, ex);
+		}
+	}
+	
+	/**
+	 * Delete the segment file, if any, e.g. when the game ends. Events in 
+	 * memory are still available, and any added later are kept in memory.
+	 */
+	public synchronized void close() {
+		closed = true;
+		if(file == null) return;
+		try {
+			out.close();
+		} catch (IOException ex) {
+			logger.warn("Failed to close event history " + file, ex);
+		}
+		if(!file.delete()) {
+			logger.warn("Failed to delete event history " + file);
+		}
+		out = null;
+		channel = null;
+		file = null;
+	}
+	
+	private void spill(int count) {
+		int written = 0;
+		try {
+			if(file == null) {
+				file = File.createTempFile(name + "-", ".events", directory);
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+				out = new BufferedOutputStream(Channels.newOutputStream(channel));
+			}
+			for(int i = 0; i < count; i++) {
+				GameEvent event = recent.get(i);
+				if(spilled % PAGE_SIZE == 0) {
+					int page = spilled / PAGE_SIZE;
+					if(page >= pageOffsets.length) {
+						pageOffsets = Arrays.copyOf(pageOffsets, pageOffsets.length * 2);
+					}
+					pageOffsets[page] = fileLength;
+				}
+				byte[] bytes = (event.getClass().getName() + "\t" + gson.toJson(event) + "\n")
+						.getBytes(StandardCharsets.UTF_8);
+				out.write(bytes);
+				fileLength += bytes.length;
+				++spilled;
+				++written;
+			}
+		} catch (IOException ex) {
+			// Keep going with the events in memory rather than failing the game:
+			logger.error("Failed to spill event history to " + directory + ", keeping it in memory", ex);
+			spillFailed = true;
+		} finally {
+			recent.subList(0, written).clear();
+		}
+	}
+	
+	private List<GameEvent> readSpilled(int from, int to) {
+		if(closed) {
+			throw new IllegalStateException("Event history " + name + " is closed, spilled events were deleted");
+		}
+		List<GameEvent> events = new ArrayList<GameEvent>(to - from);
+		try {
+			out.flush();
+			try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				raf.seek(pageOffsets[from / PAGE_SIZE]);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(
+						Channels.newInputStream(raf.getChannel()), StandardCharsets.UTF_8));
+				for(int i = from - from % PAGE_SIZE; i < from; i++) {
+					reader.readLine();
+				}
+				for(int i = from; i < to; i++) {
+					events.add(parse(reader.readLine()));
+				}
+			}
+		} catch (IOException | ClassNotFoundException ex) {
+			throw new RuntimeException("Failed to read event history " + file, ex);
+		}
+		return events;
+	}
+	
+	private GameEvent parse(String line) throws ClassNotFoundException {
+		int tab = line.indexOf('\t');
+		Class<?> eventClass = Class.forName(line.substring(0, tab));
+		return (GameEvent) gson.fromJson(line.substring(tab + 1), eventClass);
+	}
+	
+	/**
+	 * Find the file offset of a spilled event, starting from the offset of 
+	 * its page.
+	 */
+	private long findOffset(int index) throws IOException {
+		long offset = pageOffsets[index / PAGE_SIZE];
+		int skip = index % PAGE_SIZE;
+		if(skip == 0) return offset;
+		out.flush();
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.seek(offset);
+			InputStream in = new BufferedInputStream(Channels.newInputStream(raf.getChannel()));
+			int b;
+			while(skip > 0 && (b = in.read()) >= 0) {
+				++offset;
+				if(b == '\n') {
+					--skip;
+				}
+			}
+		}
+		return offset;
+	}
+
+}
@@ -24,17 +24,19 @@
 package com.wx3.cardbattle.game;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.wx3.cardbattle.game.gameevents.EventTypes;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 import com.wx3.cardbattle.game.messages.GameEntityView;
 import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.cardbattle.game.rules.RuleDependencies;
 
 /**
  * All game objects in a particular game implementations will be a GameEntity of the 
@@ -44,10 +46,11 @@ import com.wx3.cardbattle.game.rules.EntityRule;
  * <p>
  * Entities are composed of:
  * <ul>
- * <li>Tags, which are like boolean flags that can be selected against. E.g., "MINION"</li>
+ * <li>Tags, which are like boolean flags that can be selected against. E.g., "MINION". 
+ * Tags are registered in {@link Tags}, and entities hold them as bits.</li>
  * <li>{@link EntityStats}: Named integers like MAX_HEALTH and can be buffed by rules.</li>
- * <li>Vars, which are named integers like current health. Unlike Stats, Vars are not automatically
- * recalculated for buff effects.</li>
+ * <li>{@link EntityVars}: Named integers like current health. Unlike Stats, Vars are not 
+ * automatically recalculated for buff effects.</li>
  * <li>A collection of {@link EntityRule}s, which are triggered by {@link GameEvent}s.</li>
  * </ul>
  * @author Kevin
@@ -65,13 +68,24 @@ public class GameEntity {
 	
 	private String owner;
 	
-	private Set<String> tags = new HashSet<String>();
+	// The first 64 tags are bits of a long, any others go in a BitSet:
+	private long tagBits;
+	private BitSet moreTags;
 	EntityStats stats = new EntityStats();
-	private Map<String, Integer> vars = new HashMap<String,Integer>();
+	private EntityVars vars = new EntityVars();
 	private List<EntityRule> rules = new ArrayList<EntityRule>();
 	
 	private boolean removed;
 	
+	// What has changed since the entity's stats were last recalculated. New 
+	// entities (and copies) always need recalculating:
+	private boolean statsInvalid = true;
+	private Set<String> changedNames = new HashSet<String>();
+	
+	// The game the entity belongs to, which needs to know when its rules or 
+	// play state change, and when it's marked for removal:
+	private GameInstance<?> game;
+	
 	public GameEntity(){}
 	
 	void setId(int id) {
@@ -117,6 +131,7 @@ public class GameEntity {
 		}
 		rules = new ArrayList<EntityRule>(prototype.getRules());
 		stats.reset();
+		subscriptionsChanged();
 	}
 	
 	protected void copyFromEntity(GameEntity original) {
@@ -124,9 +139,26 @@ public class GameEntity {
 		this.id = original.id;
 		this.name = original.name;
 		this.owner = original.owner;
-		this.tags = new HashSet<String>(original.tags);
+		this.tagBits = original.tagBits;
+		this.moreTags = original.moreTags == null ? null : (BitSet) original.moreTags.clone();
 		this.stats = new EntityStats(original.stats);
 		this.rules = new ArrayList<EntityRule>(original.rules);
+		subscriptionsChanged();
+	}
+	
+	/**
+	 * Copy the complete state of another entity, including the buffed stats,
+	 * vars and removal flag that copyFromEntity leaves out. Used to roll back 
+	 * a command.
+	 * 
+	 * @param original
+	 */
+	void copyState(GameEntity original) {
+		copyFromEntity(original);
+		this.stats.copyCurrentValues(original.stats);
+		this.vars = new EntityVars(original.vars);
+		this.removed = original.removed;
+		invalidate();
 	}
 	
 	/**
@@ -137,7 +169,11 @@ public class GameEntity {
 	}
 
 	public void setOwner(String owner) {
+		changing();
 		this.owner = owner;
+		if(game != null) {
+			game.columnsChanged(this);
+		}
 	}
 	
 	/**
@@ -152,59 +188,190 @@ public class GameEntity {
 		return player.getPlayerName().equals(owner);
 	}
 	
+	/**
+	 * Get the names of the entity's tags, e.g. for serialization.
+	 * 
+	 * @return
+	 */
 	public Collection<String> getTags() {
-		return tags;
+		List<String> names = new ArrayList<String>();
+		for(long bits = tagBits; bits != 0; bits &= bits - 1) {
+			names.add(Tags.getName(Long.numberOfTrailingZeros(bits)));
+		}
+		if(moreTags != null) {
+			for(int i = moreTags.nextSetBit(0); i >= 0; i = moreTags.nextSetBit(i + 1)) {
+				names.add(Tags.getName(i + Tags.MASK_SIZE));
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * @return The mask of the entity's tags with ids below {@link Tags#MASK_SIZE}.
+	 */
+	public long getTagMask() {
+		return tagBits;
 	}
 	
 	public void setTag(String tag) {
-		tags.add(tag);
+		int id = Tags.register(tag);
+		if(!hasTag(id)) {
+			changing();
+			if(id < Tags.MASK_SIZE) {
+				tagBits |= 1L << id;
+			} else {
+				if(moreTags == null) {
+					moreTags = new BitSet();
+				}
+				moreTags.set(id - Tags.MASK_SIZE);
+			}
+			tagChanged(id, tag);
+		}
 	}
 	
 	public void clearTag(String tag) {
-		tags.remove(tag);
+		int id = Tags.getId(tag);
+		if(id != Tags.UNKNOWN && hasTag(id)) {
+			changing();
+			if(id < Tags.MASK_SIZE) {
+				tagBits &= ~(1L << id);
+			} else {
+				moreTags.clear(id - Tags.MASK_SIZE);
+			}
+			tagChanged(id, tag);
+		}
+	}
+	
+	private void tagChanged(int id, String tag) {
+		// Buffs only apply to entities in play:
+		if(id == Tags.IN_PLAY) {
+			invalidate();
+			subscriptionsChanged();
+		}
+		recordChange(tag);
+		if(game != null) {
+			game.columnsChanged(this);
+		}
 	}
 	
 	public boolean hasTag(String tag) {
-		return tags.contains(tag);
+		int id = Tags.getId(tag);
+		return id != Tags.UNKNOWN && hasTag(id);
+	}
+	
+	/**
+	 * Does the entity have a tag, by its id in {@link Tags}?
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public boolean hasTag(int id) {
+		if(id < Tags.MASK_SIZE) {
+			return (tagBits & (1L << id)) != 0;
+		}
+		return moreTags != null && moreTags.get(id - Tags.MASK_SIZE);
+	}
+	
+	/**
+	 * Does the entity have all of the tags in a mask from {@link Tags#mask(String...)}?
+	 * 
+	 * @param mask
+	 * @return
+	 */
+	public boolean hasAllTags(long mask) {
+		return (tagBits & mask) == mask;
+	}
+	
+	/**
+	 * Does the entity have any of the tags in a mask from {@link Tags#mask(String...)}?
+	 * 
+	 * @param mask
+	 * @return
+	 */
+	public boolean hasAnyTag(long mask) {
+		return (tagBits & mask) != 0;
 	}
 	
 	void resetStats() {
+		changing();
 		stats.reset();
 	}
 	
 	public int getStat(String stat) {
+		statsRead();
+		return stats.getValue(stat);
+	}
+	
+	/**
+	 * Get a stat by its id in {@link EntityStats#REGISTRY}.
+	 * 
+	 * @param stat
+	 * @return
+	 */
+	public int getStat(int stat) {
+		statsRead();
 		return stats.getValue(stat);
 	}
 	
 	public void setBaseStat(String stat, int val) {
+		changing();
 		stats.setBase(stat, val);
+		invalidate();
 	}
 	
 	public int getBaseStat(String stat) {
 		return stats.getBaseValue(stat);
 	}
 	
+	public int getBaseStat(int stat) {
+		return stats.getBaseValue(stat);
+	}
+	
 	public Map<String, Integer> getCurrentStats() {
+		statsRead();
 		return stats.getCurrentValues();
 	}
 	
+	/**
+	 * Get the vars that have been set by name. The map is a live view, so 
+	 * copy it if it's used outside the game's lock.
+	 * 
+	 * @return
+	 */
 	public Map<String, Integer> getCurrentVars() {
-		return Collections.unmodifiableMap(vars);
+		return vars.getValues();
 	}
 	
 	public int getVar(String var) {
-		if(vars.containsKey(var)) {
-			return vars.get(var);
-		}
-		return 0;
+		return vars.get(EntityVars.REGISTRY.getId(var));
+	}
+	
+	/**
+	 * Get a var by its id in {@link EntityVars#REGISTRY}.
+	 * 
+	 * @param var
+	 * @return
+	 */
+	public int getVar(int var) {
+		return vars.get(var);
 	}
 	
 	public void setVar(String var, int val) {
-		vars.put(var, val);
+		setVar(EntityVars.REGISTRY.register(var), val);
+	}
+	
+	public void setVar(int var, int val) {
+		changing();
+		if(vars.set(var, val)) {
+			recordChange(EntityVars.REGISTRY.getName(var));
+		}
 	}
 	
 	void addRule(EntityRule rule) {
+		changing();
 		this.rules.add(rule);
+		invalidate();
+		subscriptionsChanged();
 	}
 
 	public List<EntityRule> getRules() {
@@ -212,11 +379,126 @@ public class GameEntity {
 	}
 
 	void setRules(List<EntityRule> rules) {
+		changing();
 		this.rules = rules;
+		invalidate();
+		subscriptionsChanged();
+	}
+	
+	/**
+	 * Attach the entity to the game it belongs to.
+	 * 
+	 * @param game
+	 */
+	void setGame(GameInstance<?> game) {
+		this.game = game;
+		subscriptionsChanged();
+		if(hasChanges()) {
+			game.entityChanged();
+		}
+	}
+	
+	// Called before anything that copyState restores changes, so the game
+	// can save the entity in case the command is rolled back:
+	private void changing() {
+		if(game != null) {
+			game.entityChanging(this);
+		}
+	}
+	
+	private void statsRead() {
+		if(game != null) {
+			game.statsRead();
+		}
+	}
+	
+	private void subscriptionsChanged() {
+		if(game != null) {
+			game.subscriptionsChanged(this);
+		}
+	}
+	
+	/**
+	 * Does this entity have a buff that may change other entities' stats?
+	 * 
+	 * @return
+	 */
+	boolean hasNonLocalBuffs() {
+		for(EntityRule rule : rules) {
+			if(rule.isTriggered(EventTypes.BUFF_RECALC) && !rule.getDependencies().isLocal()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Have this entity's base stats, rules or play state changed (or has it
+	 * been buffed outside a recalculation) since its stats were recalculated?
+	 * 
+	 * @return
+	 */
+	boolean isStatsInvalid() {
+		return statsInvalid;
+	}
+	
+	void invalidateStats() {
+		changing();
+		invalidate();
+	}
+	
+	private void invalidate() {
+		statsInvalid = true;
+		if(game != null) {
+			game.entityChanged();
+		}
+	}
+	
+	private void recordChange(String name) {
+		changedNames.add(name);
+		if(game != null) {
+			game.entityChanged();
+		}
+	}
+	
+	/**
+	 * @return True if anything about the entity has changed since the last 
+	 * stat recalculation.
+	 */
+	boolean hasChanges() {
+		return statsInvalid || !changedNames.isEmpty();
+	}
+	
+	/**
+	 * Do any of this entity's buffs need to be re-run, because something 
+	 * they read has changed? 
+	 * 
+	 * @param worldChanged	Whether anything in the game has changed.
+	 * @return
+	 */
+	boolean buffInputsChanged(boolean worldChanged) {
+		for(EntityRule rule : rules) {
+			if(rule.isTriggered(EventTypes.BUFF_RECALC)) {
+				RuleDependencies dependencies = rule.getDependencies();
+				if(worldChanged && dependencies.readsWorld()) return true;
+				if(dependencies.readsAny(changedNames)) return true;
+			}
+		}
+		return false;
+	}
+	
+	void clearChanges() {
+		if(hasChanges()) {
+			changing();
+		}
+		statsInvalid = false;
+		if(!changedNames.isEmpty()) {
+			changedNames.clear();
+		}
 	}
 	
 	public boolean isInPlay() {
-		return hasTag(GameInstance.IN_PLAY);
+		return hasTag(Tags.IN_PLAY);
 	}
 	
 	/**
@@ -224,7 +506,13 @@ public class GameEntity {
 	 * being processed.
 	 */
 	public void remove() {
-		removed = true;
+		if(!removed) {
+			changing();
+			removed = true;
+			if(game != null) {
+				game.entityRemoved(this);
+			}
+		}
 	}
 	
 	boolean isRemoved() {
@@ -250,8 +538,10 @@ public class GameEntity {
 			view.cardId = getCreatingCard().getId();
 		}
 		view.tags = new HashSet<String>(getTags());
-		view.stats = getCurrentStats();
-		view.vars = getCurrentVars();
+		// Copied, since the view is serialized after the game's lock is 
+		// released and the entity may have changed by then:
+		view.stats = new LinkedHashMap<String, Integer>(getCurrentStats());
+		view.vars = new LinkedHashMap<String, Integer>(getCurrentVars());
 		
 		return view;
 	}
@@ -23,32 +23,36 @@
  *******************************************************************************/
 package com.wx3.cardbattle.game;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
-
-import javax.script.Bindings;
-import javax.script.Invocable;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptException;
-import javax.script.SimpleScriptContext;
-
-import jdk.nashorn.api.scripting.ClassFilter;
-import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.wx3.cardbattle.datastore.GameDatastore;
 import com.wx3.cardbattle.game.commands.GameCommand;
+import com.wx3.cardbattle.game.commands.ValidationResult;
 import com.wx3.cardbattle.game.gameevents.AddRuleEvent;
-import com.wx3.cardbattle.game.gameevents.BuffRecalc;
 import com.wx3.cardbattle.game.gameevents.ChatEvent;
 import com.wx3.cardbattle.game.gameevents.EndTurnEvent;
+import com.wx3.cardbattle.game.gameevents.EventPool;
+import com.wx3.cardbattle.game.gameevents.EventTypes;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 import com.wx3.cardbattle.game.gameevents.RemoveRulesEvent;
 import com.wx3.cardbattle.game.gameevents.StartTurnEvent;
@@ -56,6 +60,10 @@ import com.wx3.cardbattle.game.messages.EventMessage;
 import com.wx3.cardbattle.game.messages.GameViewMessage;
 import com.wx3.cardbattle.game.messages.JoinMessage;
 import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.cardbattle.game.rules.NativeRuleEngine;
+import com.wx3.cardbattle.game.rules.RuleContext;
+import com.wx3.cardbattle.game.rules.RuleEngine;
+import com.wx3.cardbattle.game.rules.RuleProfiler;
 import com.wx3.samplegame.events.KilledEvent;
 
 /**
@@ -67,8 +75,6 @@ import com.wx3.samplegame.events.KilledEvent;
  */
 public abstract class GameInstance<T extends GameEntity> {
 	
-	private static final int MAX_EVENTS = 1000;
-	
 	// This is the general rules entity:
 	public static final String RULES = "RULES";
 	// This entity is in play:
@@ -78,12 +84,108 @@ public abstract class GameInstance<T extends GameEntity> {
 	
 	final static Logger logger = LoggerFactory.getLogger(GameInstance.class);
 	
-	// We use a singleton of the script engine for performance (Nashorn seems to take up
-	// a couple 100k per engine instance). Each game gets its own script context and 
-	// bindings scope to avoid polluting other games. 
-	private static ScriptEngine scriptEngine;
-	protected ScriptContext scriptContext;
-	protected Bindings scriptScope;
+	// The rule engine new games use, selected at startup:
+	private static volatile RuleEngine defaultRuleEngine = new NativeRuleEngine();
+	
+	// All games share a rule engine, but each game gets its own rule context 
+	// so that independent games can run their rules on different threads. The 
+	// context is created the first time a rule needs it:
+	private RuleEngine ruleEngine;
+	private RuleContext ruleContext;
+	
+	// How many events games keep in memory, and where they spill the rest:
+	private static volatile int defaultEventHistoryWindow = EventHistory.UNBOUNDED;
+	private static volatile File eventHistoryDirectory;
+	
+	// Where games keep their journals, if anywhere:
+	private static volatile File journalDirectory;
+	private static volatile int journalSegmentSize = CommandJournal.DEFAULT_SEGMENT_SIZE;
+	private static volatile boolean keepFinishedJournals = false;
+	
+	// Journal record types:
+	static final String JOURNAL_START = "start";
+	static final String JOURNAL_COMMAND = "command";
+	
+	private static final Gson journalGson = new Gson();
+	
+	// Transient, like the logger in subclasses, so Gson never looks inside:
+	private transient CommandJournal journal;
+	// Set while the game is being rebuilt from its journal:
+	private boolean replaying = false;
+	
+	// All of the game's randomness should come from here, so that replaying 
+	// the game's journal gives the same results. It's reseeded for each 
+	// command from the seed and the number of commands so far, so a command
+	// that's rolled back doesn't change what later commands get:
+	private long seed;
+	private Random random;
+	private int commandCount = 0;
+	
+	// The budget new games use for each command:
+	private static volatile CommandBudget defaultCommandBudget = CommandBudget.DEFAULT;
+	
+	private CommandBudget commandBudget;
+	// Whether to save the game's state before each command so it can be rolled back:
+	private boolean rollbackEnabled = true;
+	// The saved state of the command being handled, which entities add 
+	// themselves to before they change. Transient so Gson never looks inside:
+	private transient Snapshot snapshot;
+	// Simulations don't keep or return their events, see setSimulation:
+	private boolean simulation = false;
+	// The last rule to fire, so we can report it if the budget runs out:
+	private String lastRuleId;
+	// While events are being processed, how many the rules have queued and 
+	// when processing started, so a rule that keeps queueing events can be 
+	// stopped while it's still running:
+	private boolean processingEvents = false;
+	private int rulesQueued;
+	private long cpuStart;
+	
+	// How many traces each game keeps, when command tracing is on:
+	public static final int MAX_COMMAND_TRACES = 32;
+	
+	private static volatile boolean defaultCommandTracing = false;
+	
+	private static volatile boolean defaultEntityColumns = false;
+	// Traced commands slower than this are logged, if it's more than 0:
+	private static volatile long slowCommandNanos = 0;
+	
+	private boolean commandTracing;
+	// The trace of the command being handled, if it's being traced:
+	private CommandTrace trace;
+	private final Map<Integer, CommandTrace> commandTraces = new LinkedHashMap<Integer, CommandTrace>() {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, CommandTrace> eldest) {
+			return size() > MAX_COMMAND_TRACES;
+		}
+	};
+	
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	
+	// Stat recalculation state, see recalculateStats:
+	private boolean recalculating = false;
+	private boolean entitiesRemoved = false;
+	// Set whenever an entity records a change, so recalculation can tell 
+	// nothing has changed without checking every entity:
+	private boolean entitiesChanged = true;
+	private boolean nonLocalBuffsApplied = false;
+	// Whether to only recalculate entities affected by changes:
+	private boolean incrementalRecalculation = true;
+	// Whether to recalculate once per phase rather than after every event:
+	private boolean phasedResolution = true;
+	// Set when a recalculation has been put off, so reading a stat does it:
+	private boolean statsPending = false;
+	
+	// The entities in play with rules for each event type:
+	private final TriggerIndex triggerIndex = new TriggerIndex();
+	// The entities in the entity list, by id:
+	private final EntityIndex<T> entityIndex = new EntityIndex<T>();
+	// Columns of the entities' ids, owners and tags, if enabled. Transient
+	// so Gson never looks inside:
+	private transient EntityColumns<T> entityColumns;
+	// Entities marked for removal, which are dropped after the current event:
+	private final List<GameEntity> removedEntities = new ArrayList<GameEntity>();
 
 	private long id;
 	
@@ -96,7 +198,8 @@ public abstract class GameInstance<T extends GameEntity> {
 	protected List<T> entities = new ArrayList<T>();
 	
 	Queue<GameEvent> eventQueue = new ConcurrentLinkedQueue<GameEvent>();
-	List<GameEvent> eventHistory = new ArrayList<GameEvent>();
+	// Transient so Gson never looks inside, e.g. at its file channel:
+	transient EventHistory eventHistory;
 	
 	private GameDatastore datastore;
 	
@@ -104,28 +207,17 @@ public abstract class GameInstance<T extends GameEntity> {
 	private boolean stopped = false;
 	private boolean gameOver = false;
 	
-	/**
-	 * Don't allow scripts to access general Java classes.
-	 *  
-	 * @author Kevin
-	 *
-	 */
-	static class RestrictiveFilter implements ClassFilter {
-
-		@Override
-		public boolean exposeToScripts(String s) {
-			return false;
-		}
-	}	
-
 	public GameInstance(GameDatastore datastore, long id) {
 		this.id = id;
 		this.datastore = datastore;
-		
-		ScriptEngine script = getScriptEngine();
-		this.scriptContext = new SimpleScriptContext();
-		this.scriptContext.setBindings(script.createBindings(), ScriptContext.ENGINE_SCOPE);
-		this.scriptScope = this.scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
+		this.ruleEngine = defaultRuleEngine;
+		this.commandBudget = defaultCommandBudget;
+		this.commandTracing = defaultCommandTracing;
+		if(defaultEntityColumns) {
+			this.entityColumns = new EntityColumns<T>();
+		}
+		setSeed(ThreadLocalRandom.current().nextLong());
+		this.eventHistory = new EventHistory(defaultEventHistoryWindow, eventHistoryDirectory, "game" + id);
 	}
 	
 	/**
@@ -138,42 +230,350 @@ public abstract class GameInstance<T extends GameEntity> {
 	protected  GameInstance(GameInstance<T> original) {
 		this.id = original.id;
 		this.datastore = original.datastore;
+		this.ruleEngine = original.ruleEngine;
+		this.commandBudget = original.commandBudget;
+		this.incrementalRecalculation = original.incrementalRecalculation;
+		this.phasedResolution = original.phasedResolution;
+		this.seed = original.seed;
+		this.random = new Random(seed);
+		this.commandCount = original.commandCount;
+		// Copies are thrown away after simulating a command, so there's no 
+		// point saving their state:
+		this.rollbackEnabled = false;
+		this.simulation = true;
+		this.eventHistory = new EventHistory();
 		this.entityIdCounter = original.entityIdCounter;
 		this.players = new ArrayList<GamePlayer>(original.players);
+		if(original.entityColumns != null) {
+			this.entityColumns = new EntityColumns<T>();
+		}
 		for(T e : original.entities) {
 			T newEntity = createEntityInstance();
 			newEntity.copyFromEntity(e);
+			newEntity.setGame(this);
 			entities.add(newEntity);
+			entityIndex.put(newEntity);
+			if(entityColumns != null) {
+				entityColumns.add(newEntity);
+			}
 		}
 		this.started = original.started;
 		this.stopped = original.stopped;
 		this.gameOver = original.gameOver;
-		
-		ScriptEngine script = getScriptEngine();
-		this.scriptContext = new SimpleScriptContext();
-		this.scriptContext.setBindings(script.createBindings(), ScriptContext.ENGINE_SCOPE);
-		this.scriptScope = this.scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
 	}
 	
 	/**
-	 * Concrete subclasses should implement copy to use their copy constructor
-	 * to return a copy of the appropriate class.
+	 * Set the rule engine that games created from now on will use. 
+	 * 
+	 * @param engine
+	 */
+	public static void setDefaultRuleEngine(RuleEngine engine) {
+		if(engine == null) {
+			throw new IllegalArgumentException("Rule engine is null");
+		}
+		defaultRuleEngine = engine;
+	}
+	
+	public static RuleEngine getDefaultRuleEngine() {
+		return defaultRuleEngine;
+	}
+	
+	public RuleEngine getRuleEngine() {
+		return ruleEngine;
+	}
+	
+	/**
+	 * Set the budget for each command in games created from now on.
+	 * 
+	 * @param budget
+	 */
+	public static void setDefaultCommandBudget(CommandBudget budget) {
+		if(budget == null) {
+			throw new IllegalArgumentException("Command budget is null");
+		}
+		defaultCommandBudget = budget;
+	}
+	
+	public static CommandBudget getDefaultCommandBudget() {
+		return defaultCommandBudget;
+	}
+	
+	public CommandBudget getCommandBudget() {
+		return commandBudget;
+	}
+	
+	public void setCommandBudget(CommandBudget budget) {
+		if(budget == null) {
+			throw new IllegalArgumentException("Command budget is null");
+		}
+		this.commandBudget = budget;
+	}
+	
+	/**
+	 * Set whether games created from now on trace their commands.
+	 * 
+	 * @param tracing
+	 */
+	public static void setDefaultCommandTracing(boolean tracing) {
+		defaultCommandTracing = tracing;
+	}
+	
+	public static boolean isDefaultCommandTracing() {
+		return defaultCommandTracing;
+	}
+	
+	/**
+	 * Set whether games created from now on keep {@link EntityColumns} for 
+	 * fast entity queries.
+	 * 
+	 * @param columns
+	 */
+	public static void setDefaultEntityColumns(boolean columns) {
+		defaultEntityColumns = columns;
+	}
+	
+	public static boolean isDefaultEntityColumns() {
+		return defaultEntityColumns;
+	}
+	
+	/**
+	 * Log the trace of any traced command that takes longer than this. 
+	 * 
+	 * @param millis	The threshold, or 0 to not log traces.
+	 */
+	public static void setSlowCommandMillis(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("Invalid slow command threshold: " + millis);
+		}
+		slowCommandNanos = millis * 1000000;
+	}
+	
+	public boolean isCommandTracing() {
+		return commandTracing;
+	}
+	
+	/**
+	 * Set whether this game records a {@link CommandTrace} for each command 
+	 * it handles. Tracing costs some time and memory, so it's off by default.
+	 * Simulations are never traced. 
+	 * 
+	 * @param tracing
+	 */
+	public void setCommandTracing(boolean tracing) {
+		this.commandTracing = tracing;
+	}
+	
+	/**
+	 * Get the trace of one of the last {@link #MAX_COMMAND_TRACES} commands 
+	 * this game traced.
+	 * 
+	 * @param commandId
+	 * @return The trace, or null if there isn't one for that command.
+	 */
+	public synchronized CommandTrace getCommandTrace(int commandId) {
+		return commandTraces.get(commandId);
+	}
+	
+	/**
+	 * @return The traces this game has kept, oldest first.
+	 */
+	public synchronized List<CommandTrace> getCommandTraces() {
+		return new ArrayList<CommandTrace>(commandTraces.values());
+	}
+	
+	public boolean isSimulation() {
+		return simulation;
+	}
+	
+	/**
+	 * A simulation is a game whose events nobody will see, such as the copies
+	 * the AI uses to try out commands, which are simulations by default. 
+	 * Simulations don't keep an event history or return the events a command
+	 * produced, and events that can be pooled are reused once they've been 
+	 * processed (see {@link EventPool}).
+	 * 
+	 * @param simulation
+	 */
+	public void setSimulation(boolean simulation) {
+		this.simulation = simulation;
+	}
+	
+	public boolean isIncrementalRecalculation() {
+		return incrementalRecalculation;
+	}
+	
+	/**
+	 * Set whether stat recalculation only resets and re-buffs the entities 
+	 * affected by what changed (the default), or recalculates every entity
+	 * after every event. Full recalculation is much slower, but is useful 
+	 * to check the incremental results against.
+	 * 
+	 * @param incremental
+	 */
+	public void setIncrementalRecalculation(boolean incremental) {
+		this.incrementalRecalculation = incremental;
+	}
+	
+	/**
+	 * Set whether this game keeps {@link EntityColumns} of its entities. 
+	 * Copies of the game keep them too.
+	 * 
+	 * @param columns
+	 */
+	public void setEntityColumns(boolean columns) {
+		if(!columns) {
+			entityColumns = null;
+		} else if(entityColumns == null) {
+			entityColumns = new EntityColumns<T>();
+			entityColumns.rebuild(entities);
+		}
+	}
+	
+	/**
+	 * @return The game's entity columns, or null if it doesn't keep them.
+	 */
+	protected EntityColumns<T> getEntityColumns() {
+		return entityColumns;
+	}
+	
+	public boolean isPhasedResolution() {
+		return phasedResolution;
+	}
+	
+	/**
+	 * Set whether events are resolved in phases (the default), with stats 
+	 * recalculated at the end of each phase, or stats are recalculated after
+	 * every event. See {@link #processEvents()}. 
+	 * 
+	 * @param phased
+	 */
+	public void setPhasedResolution(boolean phased) {
+		this.phasedResolution = phased;
+	}
+	
+	/**
+	 * Set how many events games created from now on keep in memory. Older 
+	 * events are spilled to disk, if an event history directory is set.
+	 * 
+	 * @param window	The number of events, or EventHistory.UNBOUNDED.
+	 */
+	public static void setDefaultEventHistoryWindow(int window) {
+		if(window < 0) {
+			throw new IllegalArgumentException("Invalid event history window: " + window);
+		}
+		defaultEventHistoryWindow = window;
+	}
+	
+	public static int getDefaultEventHistoryWindow() {
+		return defaultEventHistoryWindow;
+	}
+	
+	/**
+	 * Set the directory where games spill their event histories. If null, 
+	 * games keep every event in memory. 
+	 * 
+	 * @param directory
+	 */
+	public static void setEventHistoryDirectory(File directory) {
+		eventHistoryDirectory = directory;
+	}
+	
+	public static File getEventHistoryDirectory() {
+		return eventHistoryDirectory;
+	}
+	
+	/**
+	 * Set the directory where games started from now on keep their command 
+	 * journals. If null, games aren't journaled. 
+	 * 
+	 * @param directory
+	 */
+	public static void setJournalDirectory(File directory) {
+		journalDirectory = directory;
+	}
+	
+	public static File getJournalDirectory() {
+		return journalDirectory;
+	}
+	
+	/**
+	 * Set the size of the segment files new journals are written in.
+	 * 
+	 * @param size	The size in bytes.
+	 */
+	public static void setJournalSegmentSize(int size) {
+		if(size < 1024) {
+			throw new IllegalArgumentException("Invalid journal segment size: " + size);
+		}
+		journalSegmentSize = size;
+	}
+	
+	/**
+	 * Set whether games keep their journals once they're over. Normally a 
+	 * finished game's journal is deleted, since the game will never need to
+	 * be recovered, but e.g. a benchmark may want to replay it.
+	 * 
+	 * @param keep
+	 */
+	public static void setKeepFinishedJournals(boolean keep) {
+		keepFinishedJournals = keep;
+	}
+	
+	/**
+	 * @return This game's journal, or null if it isn't journaled.
+	 */
+	public CommandJournal getJournal() {
+		return journal;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Set the seed of the game's random number generator. The seed is 
+	 * journaled when the game starts, so it can only be changed before then.
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		if(started) {
+			throw new RuntimeException("Can't change the seed of a game that has started");
+		}
+		this.seed = seed;
+		this.random = new Random(seed);
+	}
+	
+	/**
+	 * Get the game's random number generator. Rules and commands should use 
+	 * this for anything random, so the game can be replayed from its journal.
 	 * 
 	 * @return
 	 */
-	public abstract GameInstance<?> copy();
+	public Random getRandom() {
+		return random;
+	}
 	
-	protected static ScriptEngine getScriptEngine() {
-		if(scriptEngine == null) {
-			NashornScriptEngineFactory factory = new NashornScriptEngineFactory(); 
-			scriptEngine = factory.getScriptEngine(new RestrictiveFilter());
-			if(scriptEngine == null) {
-				throw new RuntimeException("Unable to get script engine");
-			}
+	/**
+	 * Get this game's rule context, creating it the first time it's needed. 
+	 * 
+	 * @return
+	 */
+	protected RuleContext getRuleContext() {
+		if(ruleContext == null) {
+			ruleContext = ruleEngine.createContext(this);
 		}
-		return scriptEngine;
+		return ruleContext;
 	}
 	
+	/**
+	 * Concrete subclasses should implement copy to use their copy constructor
+	 * to return a copy of the appropriate class.
+	 * 
+	 * @return
+	 */
+	public abstract GameInstance<?> copy();
+	
 	public long getId() {
 		return id;
 	}
@@ -236,10 +636,53 @@ public abstract class GameInstance<T extends GameEntity> {
 		T entity = createEntityInstance();
 		++entityIdCounter;
  		entity.setId(entityIdCounter);
+ 		entity.setGame(this);
  		entities.add(entity);
+ 		entityIndex.put(entity);
+ 		if(entityColumns != null) {
+ 			entityColumns.add(entity);
+ 		}
 		return entity;
 	}
 	
+	/**
+	 * Called by an entity when its rules or play state change, so it can be
+	 * re-indexed.
+	 * 
+	 * @param entity
+	 */
+	void subscriptionsChanged(GameEntity entity) {
+		triggerIndex.update(entity);
+	}
+	
+	/**
+	 * Called by an entity when its tags or owner change.
+	 * 
+	 * @param entity
+	 */
+	void columnsChanged(GameEntity entity) {
+		if(entityColumns != null) {
+			entityColumns.update(entity);
+		}
+	}
+	
+	/**
+	 * Called by an entity when something that may affect stats changes.
+	 */
+	void entityChanged() {
+		entitiesChanged = true;
+	}
+	
+	/**
+	 * Called by an entity when it's marked for removal. It stays in the game
+	 * until the current event has been processed.
+	 * 
+	 * @param entity
+	 */
+	void entityRemoved(GameEntity entity) {
+		removedEntities.add(entity);
+	}
+	
 	/**
 	 * Get the entity with the supplied id.
 	 * 
@@ -247,7 +690,7 @@ public abstract class GameInstance<T extends GameEntity> {
 	 * @return
 	 */
 	public T getEntity(int id) {
-		return entities.stream().filter(e -> e.getId() == id).findFirst().orElse(null);
+		return entityIndex.get(id);
 	}
 	
 	public List<T> getEntities() {
@@ -320,6 +763,10 @@ public abstract class GameInstance<T extends GameEntity> {
 	}
 	
 	public void start() {
+		if(journalDirectory != null && journal == null && !replaying) {
+			journal = CommandJournal.create(journalDirectory, id, journalSegmentSize);
+			journal.append(JOURNAL_START, new JournalStart(this));
+		}
 		startTurn();
 		processEvents();
 		started = true;
@@ -331,6 +778,138 @@ public abstract class GameInstance<T extends GameEntity> {
 		for(GamePlayer player : players) {
 			player.disconnect();
 		}
+		eventHistory.close();
+		if(journal != null) {
+			journal.close();
+		}
+	}
+	
+	/**
+	 * Subclasses with setup that happens before the game starts, like the 
+	 * players' decks, should return it here so it's journaled with the 
+	 * seed and players. 
+	 * 
+	 * @return An object that can be serialized with Gson, or null.
+	 */
+	protected Object getJournalSetup() {
+		return null;
+	}
+	
+	/**
+	 * Restore the setup returned by getJournalSetup, when recovering the game.
+	 * 
+	 * @param setup
+	 */
+	protected void restoreJournalSetup(JsonElement setup) {}
+	
+	/**
+	 * Rebuild the game from its journal, after a restart. The game should be
+	 * newly created, in the same way as the original (but without players), 
+	 * and not started. The players are added, the game is started and every
+	 * command that was accepted is replayed. Then the game carries on 
+	 * appending to the journal.
+	 */
+	public void recover() {
+		if(journalDirectory == null) {
+			throw new RuntimeException("No journal directory");
+		}
+		if(started) {
+			throw new RuntimeException("Can't recover a game that has started");
+		}
+		List<CommandJournal.Entry> entries = CommandJournal.read(journalDirectory, id);
+		replaying = true;
+		try {
+			for(CommandJournal.Entry entry : entries) {
+				replay(entry);
+			}
+		} finally {
+			replaying = false;
+		}
+		journal = CommandJournal.open(journalDirectory, id, journalSegmentSize);
+		logger.info("Recovered game " + id + " from " + entries.size() + " journal records");
+	}
+	
+	private void replay(CommandJournal.Entry entry) {
+		JsonObject payload = entry.getPayload().getAsJsonObject();
+		switch(entry.getType()) {
+			case JOURNAL_START:
+				for(JsonElement element : payload.getAsJsonArray("players")) {
+					JsonObject journaled = element.getAsJsonObject();
+					String name = journaled.get("name").getAsString();
+					User user = datastore.getUser(name);
+					GamePlayer player = new GamePlayer(user != null ? user : new User(name));
+					player.setId(journaled.get("id").getAsLong());
+					if(journaled.has("authtoken")) {
+						player.setAuthtoken(journaled.get("authtoken").getAsString());
+					}
+					addPlayer(player);
+				}
+				setSeed(payload.get("seed").getAsLong());
+				restoreJournalSetup(payload.get("setup"));
+				start();
+				break;
+			case JOURNAL_COMMAND:
+				GamePlayer player = getPlayerInPosition(payload.get("player").getAsInt());
+				GameCommand<?> command;
+				try {
+					Class<?> type = Class.forName(payload.get("type").getAsString());
+					command = (GameCommand<?>) journalGson.fromJson(payload.get("command"), type);
+				} catch (ClassNotFoundException ex) {
+					throw new RuntimeException("Unknown command in journal: " + entry, ex);
+				}
+				ValidationResult result = player.handleCommand(command);
+				if(!result.isValid()) {
+					logger.warn("Journaled command in game " + id + " is no longer valid: " + 
+							entry + " " + result.getErrors());
+				}
+				break;
+			default:
+				throw new RuntimeException("Unknown journal record: " + entry);
+		}
+	}
+	
+	private static final class JournalPlayer {
+		
+		final long id;
+		final String name;
+		final String authtoken;
+		
+		JournalPlayer(GamePlayer player) {
+			this.id = player.getId();
+			this.name = player.getPlayerName();
+			this.authtoken = player.getAuthtoken();
+		}
+	}
+	
+	private static final class JournalStart {
+		
+		final String game;
+		final long seed;
+		final List<JournalPlayer> players = new ArrayList<JournalPlayer>();
+		final Object setup;
+		
+		JournalStart(GameInstance<?> game) {
+			this.game = game.getClass().getName();
+			this.seed = game.seed;
+			for(GamePlayer player : game.players) {
+				players.add(new JournalPlayer(player));
+			}
+			this.setup = game.getJournalSetup();
+		}
+	}
+	
+	private static final class JournalCommand {
+		
+		final int player;
+		final String type;
+		// Serialized later, on the journal's thread, as its actual class:
+		final Object command;
+		
+		JournalCommand(GamePlayer player, GameCommand<?> command) {
+			this.player = player.getPosition();
+			this.type = command.getClass().getName();
+			this.command = command;
+		}
 	}
 	
 
@@ -347,17 +926,198 @@ public abstract class GameInstance<T extends GameEntity> {
 	}
 	
 	public synchronized List<GameEvent> handleCommand(GameCommand<GameInstance<T>> command) {
-		command.execute(this);
-		List<GameEvent> events = processEvents();
-		return events;
+		// If the command fails part way through, e.g. by running over its 
+		// budget, roll back whatever it has already done. Commands that only 
+		// queue events only need saving if a rule could react to them:
+		List<GameEvent> queued = rollbackEnabled ? new ArrayList<GameEvent>(eventQueue) : null;
+		snapshot = rollbackEnabled && command.changesState() ? new Snapshot(queued) : null;
+		random.setSeed(seed + commandCount);
+		trace = commandTracing && !simulation ? new CommandTrace(command) : null;
+		long start = trace != null ? System.nanoTime() : 0;
+		String error = null;
+		try {
+			command.execute(this);
+			if(rollbackEnabled && snapshot == null && hasSubscribers(eventQueue)) {
+				snapshot = new Snapshot(queued);
+			}
+			List<GameEvent> events = processEvents();
+			++commandCount;
+			// A finished game doesn't need the events it spilled to disk:
+			if(gameOver) {
+				eventHistory.close();
+			}
+			if(journal != null) {
+				journalCommand(command);
+				if(gameOver && !keepFinishedJournals) {
+					journal.delete();
+					journal = null;
+				}
+			}
+			return events;
+		} catch (RuntimeException ex) {
+			error = ex.toString();
+			if(snapshot != null) {
+				Snapshot saved = snapshot;
+				snapshot = null;
+				saved.restore();
+			}
+			throw ex;
+		} finally {
+			snapshot = null;
+			if(trace != null) {
+				saveTrace(trace, System.nanoTime() - start, error);
+				trace = null;
+			}
+		}
+	}
+	
+	private void saveTrace(CommandTrace trace, long nanos, String error) {
+		trace.finished(nanos, error);
+		commandTraces.put(trace.getCommandId(), trace);
+		if(slowCommandNanos > 0 && nanos > slowCommandNanos) {
+			logger.warn("Slow command in game " + id + ": " + trace.toJson());
+		}
+	}
+	
+	private void journalCommand(GameCommand<?> command) {
+		for(GamePlayer player : players) {
+			if(player.getPlayerName().equals(command.getPlayerName())) {
+				journal.append(JOURNAL_COMMAND, new JournalCommand(player, command));
+				return;
+			}
+		}
+		logger.warn("Not journaling " + command + ", it has no player in game " + id);
+	}
+	
+	private boolean hasSubscribers(Collection<GameEvent> events) {
+		for(GameEvent event : events) {
+			if(triggerIndex.hasSubscribers(EventTypes.getId(event.getClass()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Subclasses with additional state that commands can change should save 
+	 * a copy of it here, so that a failed command can be rolled back.
+	 * 
+	 * @return The saved state, which will be passed to restoreState.
+	 */
+	protected Object saveState() {
+		return null;
+	}
+	
+	/**
+	 * Restore additional state saved by saveState.
+	 * 
+	 * @param state
+	 */
+	protected void restoreState(Object state) {}
+	
+	/**
+	 * Called by an entity before its state changes, so the command being 
+	 * handled can be rolled back.
+	 * 
+	 * @param entity
+	 */
+	void entityChanging(GameEntity entity) {
+		if(snapshot != null) {
+			snapshot.save(entity);
+		}
+	}
+	
+	/**
+	 * The state of the game before a command, so the command can be rolled 
+	 * back. Entities are restored in place, since players and events hold 
+	 * references to them, and any entities the command created are dropped.
+	 * <p>
+	 * Entities are only copied the first time they change during the 
+	 * command, so a command that touches a few entities doesn't copy the 
+	 * whole board. 
+	 */
+	private class Snapshot {
+		
+		private final int turn = GameInstance.this.turn;
+		private final int entityIdCounter = GameInstance.this.entityIdCounter;
+		private final boolean started = GameInstance.this.started;
+		private final boolean stopped = GameInstance.this.stopped;
+		private final boolean gameOver = GameInstance.this.gameOver;
+		private final boolean entitiesRemoved = GameInstance.this.entitiesRemoved;
+		private final boolean entitiesChanged = GameInstance.this.entitiesChanged;
+		private final boolean nonLocalBuffsApplied = GameInstance.this.nonLocalBuffsApplied;
+		private final boolean statsPending = GameInstance.this.statsPending;
+		private final int historySize = eventHistory.size();
+		private final List<GameEvent> queued;
+		private final List<T> entityList = new ArrayList<T>(entities);
+		// Copies of the entities that have changed, as they were before:
+		private final Map<GameEntity, GameEntity> entityStates = new IdentityHashMap<GameEntity, GameEntity>();
+		private final List<GameEntity> removed = new ArrayList<GameEntity>(removedEntities);
+		private final Object state = saveState();
+		
+		/**
+		 * @param queued	The events that were queued before the command.
+		 */
+		Snapshot(List<GameEvent> queued) {
+			this.queued = queued;
+		}
+		
+		void save(GameEntity entity) {
+			// Entities the command created are dropped on restore anyway:
+			if(entity.getId() > entityIdCounter || entityStates.containsKey(entity)) return;
+			T copy = createEntityInstance();
+			copy.copyState(entity);
+			entityStates.put(entity, copy);
+		}
+		
+		void restore() {
+			GameInstance.this.turn = turn;
+			GameInstance.this.entityIdCounter = entityIdCounter;
+			GameInstance.this.started = started;
+			GameInstance.this.stopped = stopped;
+			GameInstance.this.gameOver = gameOver;
+			GameInstance.this.entitiesRemoved = entitiesRemoved;
+			GameInstance.this.entitiesChanged = entitiesChanged;
+			GameInstance.this.nonLocalBuffsApplied = nonLocalBuffsApplied;
+			GameInstance.this.statsPending = statsPending;
+			eventHistory.truncate(historySize);
+			eventQueue.clear();
+			eventQueue.addAll(queued);
+			for(Map.Entry<GameEntity, GameEntity> entry : entityStates.entrySet()) {
+				entry.getKey().copyState(entry.getValue());
+			}
+			entities.clear();
+			entities.addAll(entityList);
+			entityIndex.rebuild(entities);
+			triggerIndex.rebuild(entities);
+			if(entityColumns != null) {
+				entityColumns.rebuild(entities);
+			}
+			removedEntities.clear();
+			removedEntities.addAll(removed);
+			restoreState(state);
+		}
 	}
 	
  	protected void addEvent(GameEvent event) {
+ 		if(processingEvents) {
+ 			checkBudget(++rulesQueued);
+ 		}
 		eventQueue.add(event);
+		if(trace != null) {
+			trace.eventQueued(event);
+		}
 	}
  	
- 	public List<GameEvent> getEventHistory() {
- 		return Collections.unmodifiableList(eventHistory);
+ 	/**
+ 	 * Get the events this game has processed. Older events may only be 
+ 	 * available from disk, without their entity references, so the 
+ 	 * history should be read a page at a time or iterated over.
+ 	 * 
+ 	 * @return
+ 	 */
+ 	public EventHistory getEventHistory() {
+ 		return eventHistory;
  	}
 	
 	protected void startTurn() {
@@ -424,10 +1184,10 @@ public abstract class GameInstance<T extends GameEntity> {
 			throw new RuleException("Entity is null");
 		}
 		entity.addRule(rule);
-		// A rule add requires that we recalculate stats now, so that any additional 
-		// actions by the same rule has the correct values. For example, a health buff
-		// combined with a heal:
-		recalculateStats();
+		// A rule add requires that we recalculate stats before they're next read, 
+		// so that any additional actions by the same rule have the correct values. 
+		// For example, a health buff combined with a heal:
+		statsPending = true;
 		addEvent(new AddRuleEvent(entity, rule, cause));
 	}
 	
@@ -451,79 +1211,232 @@ public abstract class GameInstance<T extends GameEntity> {
 		}
 		entity.setRules(rules);
 		// Like enchantment, disenchanting also requires a stat recalculation:
-		recalculateStats();
+		statsPending = true;
 		addEvent(new RemoveRulesEvent(entity, null));
 	}
 	
 	/**
-	 * Resets all entities' stats to their base values, then evaluates
-	 * all buff rules to update them.
+	 * Brings all entities' stats up to date by resetting them to their base 
+	 * values and evaluating buff rules.
+	 * <p>
+	 * Only entities whose buffs could have a different result are recalculated,
+	 * using each rule's {@link RuleDependencies}. As long as every buff in play 
+	 * only changes its own entity, an entity's stats depend only on its own 
+	 * base stats and buffs, so it needs recalculating if its base stats, rules 
+	 * or play state changed, or if something its buffs read changed. If any 
+	 * buff may change other entities, every entity is recalculated. If nothing
+	 * has changed at all, nothing is recalculated. 
+	 * <p>
+	 * With incremental recalculation turned off, every entity is always 
+	 * recalculated.
 	 */
 	protected void recalculateStats() {
-		// First, reset all stats. This sets each stat to the base value:
+		statsPending = false;
+		RuleProfiler profiler = RuleProfiler.getInstance();
+		if(!profiler.isEnabled() && trace == null) {
+			recalculateChangedStats();
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			recalculateChangedStats();
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if(profiler.isEnabled()) {
+				profiler.record(RuleProfiler.Kind.RECALCULATION, getClass().getSimpleName(), nanos);
+			}
+			if(trace != null) {
+				trace.recalculated(nanos);
+			}
+		}
+	}
+	
+	/**
+	 * Called before an entity's stats are read, to bring them up to date if
+	 * a recalculation has been put off.
+	 */
+	void statsRead() {
+		if(statsPending && !recalculating) {
+			recalculateStats();
+		}
+	}
+	
+	private void recalculateChangedStats() {
+		boolean changed = entitiesRemoved || entitiesChanged;
+		if(!changed && incrementalRecalculation) return;
+		boolean nonLocal = false;
 		for(GameEntity entity : entities) {
-			entity.resetStats();
+			nonLocal |= entity.isInPlay() && entity.hasNonLocalBuffs();
+		}
+		recalculating = true;
+		try {
+			// If a buff that may affect other entities is in play, or was last 
+			// time (and may have been removed), we have to do everything:
+			boolean all = !incrementalRecalculation || nonLocal || nonLocalBuffsApplied;
+			for(GameEntity entity : entities) {
+				if(all || entity.isStatsInvalid() || 
+						(entity.isInPlay() && entity.buffInputsChanged(changed))) {
+					entity.resetStats();
+					entity.invalidateStats();
+				}
+			}
+			// Buffs are evaluated in the same order as a full recalculation, 
+			// so non-local buffs see the same stats:
+			for(GameEntity entity : entities) {
+				if(entity.isInPlay() && entity.isStatsInvalid()) {
+					applyBuffs(entity);
+				}
+			}
+		} finally {
+			recalculating = false;
 		}
-		// Then iterate over all entities and trigger any buff rules. These rules
-		// may modify one or more entity's stats:
 		for(GameEntity entity : entities) {
-			if(entity.isInPlay()) {
-				for(EntityRule rule : entity.getRules()) {
-					if(rule.getEventTrigger().equals(BuffRecalc.class.getSimpleName())) {
-						Bindings bindings = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
-						bindings.put("rules", this);
-						bindings.put("entity", entity);
-						try {
-							bindGameToScript();
-							getScriptEngine().eval(rule.getScript(), scriptContext);	
-						} catch (Exception ex) {
-							throw new RuleException("Exception processing buff " + rule + ":" + ex.getMessage());
-						}
+			entity.clearChanges();
+		}
+		nonLocalBuffsApplied = nonLocal;
+		entitiesRemoved = false;
+		entitiesChanged = false;
+	}
+	
+	private void applyBuffs(GameEntity entity) {
+		RuleProfiler profiler = RuleProfiler.getInstance();
+		for(EntityRule rule : entity.getRules()) {
+			if(rule.isTriggered(EventTypes.BUFF_RECALC)) {
+				long start = profiler.isEnabled() ? System.nanoTime() : 0;
+				try {
+					getRuleContext().buff(rule, entity);
+				} catch (Exception ex) {
+					throw new RuleException("Exception processing buff " + rule + ":" + ex.getMessage());
+				} finally {
+					if(profiler.isEnabled()) {
+						profiler.record(RuleProfiler.Kind.BUFF, rule.getId(), System.nanoTime() - start);
 					}
 				}
 			}
 		}
 	}
 	
-	// Whenever a command is processed, the game processes all the 
-	// events in the event queue. These events are applied to any 
-	// appropriate rules, which in turn may trigger additional events.
-	// After each event, entity stats are recalculated.
+	/**
+	 * Whenever a command is processed, the game processes all the events in 
+	 * the event queue. These events are applied to any appropriate rules, 
+	 * which in turn may trigger additional events.
+	 * <p>
+	 * Events are resolved in phases: a phase is the events that were queued 
+	 * when it began, such as the events a command queued, or the events the 
+	 * rules in the previous phase queued. Events are still processed one at 
+	 * a time in the order they were queued, but entity stats are only 
+	 * recalculated at the end of each phase, so a spell that damages every
+	 * minion pays for one recalculation rather than one per minion. If a 
+	 * stat is read in the middle of a phase, after something has changed, it 
+	 * is recalculated first, so rules always see up to date stats. 
+	 * <p>
+	 * With phased resolution turned off, stats are recalculated after every 
+	 * event.
+	 * 
+	 * <p>
+	 * The {@link CommandBudget} is checked after each event, and whenever a 
+	 * rule queues an event, so a rule that loops queueing events is stopped 
+	 * part way through. 
+	 * 
+	 * @return The events processed.
+	 */
 	List<GameEvent> processEvents() {
-		ArrayList<GameEvent> events = new ArrayList<GameEvent>();
+		processingEvents = true;
+		rulesQueued = 0;
+		lastRuleId = null;
+		cpuStart = commandBudget.isCpuLimited() ? threadBean.getCurrentThreadCpuTime() : 0;
+		try {
+			return processEventQueue();
+		} finally {
+			processingEvents = false;
+		}
+	}
+	
+	private List<GameEvent> processEventQueue() {
+		List<GameEvent> events = simulation ? Collections.<GameEvent>emptyList() : new ArrayList<GameEvent>();
 		int i = 0;
+		// How many events are left in the current phase:
+		int phaseEvents = 0;
 		while(!eventQueue.isEmpty()) {
+			if(phaseEvents == 0) {
+				phaseEvents = eventQueue.size();
+			}
 			GameEvent event = eventQueue.poll();
-			// Iterate over a copy of entities to avoid ConcurrentModification exceptions
-			// if a rule spawns an entity:
-			List<GameEntity> entityList = new ArrayList<GameEntity>(entities);
-			for(GameEntity entity : entityList) {
-				if(entity.isInPlay()) {
-					for(EntityRule rule : entity.getRules()) {
-						processRule(event, rule, entity);
-					}
-				}
+			long eventStart = 0;
+			if(trace != null) {
+				trace.eventStarted(event);
+				eventStart = System.nanoTime();
 			}
-			// Try to remove any entities marked for removal after 
-			// each event is processed:
-			Iterator<T> iter = entities.iterator();
-			while(iter.hasNext()) {
-				GameEntity entity = iter.next();
-				if(entity.isRemoved()) {
-					iter.remove();
+			// Visit the entities in play with rules for this event, in entity 
+			// order. Rules may change the subscribers as we go, so we look up 
+			// the next one each time. Entities spawned by this event's rules 
+			// don't see it:
+			int eventType = EventTypes.getId(event.getClass());
+			int lastId = entityIdCounter;
+			// Events no rule reacts to, like chat, skip straight to recalculation,
+			// which does nothing unless something else has changed:
+			GameEntity subscriber = triggerIndex.hasSubscribers(eventType) ? triggerIndex.next(eventType, 0) : null;
+			while(subscriber != null && subscriber.getId() <= lastId) {
+				for(EntityRule rule : subscriber.getRules()) {
+					processRule(event, rule, subscriber);
 				}
+				subscriber = triggerIndex.next(eventType, subscriber.getId());
 			}
-			recalculateStats();
-			events.add(event);
-			++i;
-			if(i > MAX_EVENTS) {
-				throw new RuntimeException("Exceeded max events: " + MAX_EVENTS);
+			// Drop any entities marked for removal after each event is processed:
+			if(!removedEntities.isEmpty()) {
+				dropRemovedEntities();
+			}
+			--phaseEvents;
+			if(phaseEvents == 0 || !phasedResolution) {
+				recalculateStats();
+			} else {
+				statsPending = true;
+			}
+			if(trace != null) {
+				trace.eventFinished(System.nanoTime() - eventStart);
+			}
+			checkBudget(++i);
+			if(simulation) {
+				// Nothing refers to the event now, so it can be reused:
+				EventPool.release(event);
+			} else {
+				events.add(event);
+				eventHistory.add(event);
 			}
-			eventHistory.add(event);
 		}
 		return events;
 	}
 	
+	private void dropRemovedEntities() {
+		entities.removeIf(GameEntity::isRemoved);
+		for(GameEntity entity : removedEntities) {
+			entityIndex.remove(entity);
+			triggerIndex.remove(entity);
+		}
+		if(entityColumns != null) {
+			entityColumns.dropRemoved();
+		}
+		removedEntities.clear();
+		entitiesRemoved = true;
+	}
+	
+	/**
+	 * Throw a BudgetExceededException if the current command has used up its
+	 * budget.
+	 * 
+	 * @param events	The number of events processed or queued so far.
+	 */
+	private void checkBudget(int events) {
+		if(events > commandBudget.getMaxEvents()) {
+			throw new BudgetExceededException("Exceeded max events: " + commandBudget.getMaxEvents(), lastRuleId);
+		}
+		if(commandBudget.isCpuLimited() && 
+				threadBean.getCurrentThreadCpuTime() - cpuStart > commandBudget.getMaxCpuNanos()) {
+			throw new BudgetExceededException("Exceeded max CPU time: " + 
+				commandBudget.getMaxCpuNanos() / 1000000 + " ms", lastRuleId);
+		}
+	}
+	
 	/**
 	 * Evaluate the {@link EntityRule} attached to an entity, in the context of a 
 	 * triggering event.
@@ -535,48 +1448,68 @@ public abstract class GameInstance<T extends GameEntity> {
 	void processRule(GameEvent event, EntityRule rule, GameEntity entity) {
 		try {
 			if(rule.isTriggered(event)) {
-				
-				// Let the rule access the event, game and entity objects:
-				scriptScope.put("event", event);
-				scriptScope.put("rules", this);
-				scriptScope.put("entity", entity);
-				bindGameToScript();
-				logger.debug("Executing " + rule + " for " + event + " on " + entity);
-				getScriptEngine().eval(rule.getScript(),scriptContext);
+				if(logger.isDebugEnabled()) {
+					logger.debug("Executing " + rule + " for " + event + " on " + entity);
+				}
+				lastRuleId = rule.getId();
+				RuleProfiler profiler = RuleProfiler.getInstance();
+				if(profiler.isEnabled() || trace != null) {
+					if(trace != null) {
+						trace.ruleStarted(rule, entity);
+					}
+					long start = System.nanoTime();
+					try {
+						getRuleContext().trigger(rule, entity, event);
+					} finally {
+						long nanos = System.nanoTime() - start;
+						if(profiler.isEnabled()) {
+							profiler.record(RuleProfiler.Kind.RULE, rule.getId(), nanos);
+						}
+						if(trace != null) {
+							trace.ruleFinished(nanos);
+						}
+					}
+				} else {
+					getRuleContext().trigger(rule, entity, event);
+				}
 			}
-		} catch (final ScriptException se) {
-			throw new RuntimeException("Error in rule: " + rule.getId(), se.getCause());
+		} catch (BudgetExceededException ex) {
+			// Abort the command, reporting which budget ran out:
+			throw ex;
+		} catch (RuleException ex) {
+			throw new RuntimeException("Error in rule: " + rule.getId(), ex);
 		} catch (Exception ex) {
 			throw new RuntimeException("Unexpected error in processing rule: " + rule.getId(), ex.getCause());
 		}
 	}
 	
 	/**
-	 * Binds "this" to the javascript global object so that GameInstance methods
-	 * can be called without needing to preface every one with an object reference,
-	 * e.g.: "endTurn()" instead of "game.endTurn()".
+	 * Modify an entity's stat by a particular amount. Note that buffing should only 
+	 * happen in response to a BuffRecalculation, which occurs after an event is 
+	 * processed.
 	 * 
-	 * @throws ScriptException
-	 * @throws NoSuchMethodException
+	 * @param entity
+	 * @param stat
+	 * @param amount
 	 */
-	private void bindGameToScript() throws ScriptException, NoSuchMethodException {
-		ScriptEngine engine = getScriptEngine();
-		Object global = engine.eval("this", scriptContext);
-		Object jsObject = engine.eval("Object", scriptContext);
-		((Invocable) engine).invokeMethod(jsObject, "bindProperties", global, this);
+	public void buffEntity(GameEntity entity, String stat, int amount) {
+		buffEntity(entity, EntityStats.REGISTRY.register(stat), amount);
 	}
 	
 	/**
-	 * Modify an entity's stat by a particular amount. Note that buffing should only 
-	 * happen in response to a BuffRecalculation, which occurs after an event is 
-	 * processed.
+	 * Modify an entity's stat, by its id in {@link EntityStats#REGISTRY}.
 	 * 
 	 * @param entity
 	 * @param stat
 	 * @param amount
 	 */
-	public void buffEntity(GameEntity entity, String stat, int amount) {
+	public void buffEntity(GameEntity entity, int stat, int amount) {
+		entityChanging(entity);
 		entity.stats.buff(stat, amount);
+		// A buff outside a recalculation only lasts until the next one:
+		if(!recalculating) {
+			entity.invalidateStats();
+		}
 	}
 	
 	/**
@@ -599,7 +1532,7 @@ public abstract class GameInstance<T extends GameEntity> {
 	 * @param entity
 	 */
 	protected void killEntity(T entity) {
-		KilledEvent event = new KilledEvent(entity);
+		KilledEvent event = KilledEvent.obtain(this, entity);
 		addEvent(event);
 		entity.remove();
 	}
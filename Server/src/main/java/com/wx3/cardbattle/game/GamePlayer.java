@@ -83,6 +83,13 @@ public final class GamePlayer {
 	@Transient
 	private MessageHandler messageHandler;
 	
+	/**
+	 * The player's auth token, kept so the game's journal can restore it. 
+	 * Transient for Gson too, so it's never sent to clients.
+	 */
+	@Transient
+	private transient String authtoken;
+	
 	public GamePlayer() {}
 	
 	public GamePlayer(User user) {
@@ -108,6 +115,14 @@ public final class GamePlayer {
 	public int getPosition() {
 		return position;
 	}
+	
+	public String getAuthtoken() {
+		return authtoken;
+	}
+	
+	public void setAuthtoken(String authtoken) {
+		this.authtoken = authtoken;
+	}
 
 	void setPosition(int position) {
 		this.position = position;
@@ -135,8 +150,14 @@ public final class GamePlayer {
 		ValidationResult result;
 		result = command.validate(game);
 		if(result.isValid()) {
-			List<GameEvent> events = game.handleCommand(command);
-			game.broadcastEvents(events);
+			try {
+				List<GameEvent> events = game.handleCommand(command);
+				game.broadcastEvents(events);
+			} catch (BudgetExceededException ex) {
+				// The game has been rolled back, so the command just fails:
+				logger.warn("Command " + command + " in game " + game.getId() + " aborted: " + ex.getMessage());
+				result.addError("Command aborted: " + ex.getMessage());
+			}
 		}
 		return result;
 	}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Gives each name in some namespace, such as stat names, a small dense int
+ * id, so values can be stored in arrays indexed by id instead of maps keyed
+ * by name.
+ * <p>
+ * Registries are global and only grow. Names known in advance should be 
+ * registered at startup; others are registered the first time a value is 
+ * set for them.
+ * 
+ * @author Kevin
+ *
+ */
+public final class NameRegistry {
+	
+	/**
+	 * The id returned for a name that isn't registered.
+	 */
+	public static final int UNKNOWN = -1;
+	
+	private final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private final List<String> names = new CopyOnWriteArrayList<String>();
+	
+	/**
+	 * Register a name, if it isn't already.
+	 * 
+	 * @param name
+	 * @return The name's id.
+	 */
+	public int register(String name) {
+		Integer id = ids.get(name);
+		if(id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(name);
+			if(id == null) {
+				id = names.size();
+				names.add(name);
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+	
+	/**
+	 * Get the id of a name, without registering it.
+	 * 
+	 * @param name
+	 * @return The id, or UNKNOWN if the name isn't registered.
+	 */
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		return id == null ? UNKNOWN : id;
+	}
+	
+	public String getName(int id) {
+		return names.get(id);
+	}
+	
+	/**
+	 * @return The number of registered names, which is one more than the 
+	 * largest id.
+	 */
+	public int size() {
+		return names.size();
+	}
+
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only map view of values stored in an array indexed by the ids of a
+ * {@link NameRegistry}, such as an entity's stats or vars. The view is live,
+ * and only looks names up when it's iterated. Anything that reads it 
+ * outside the game's lock, like a message being serialized, should copy it
+ * first.
+ * 
+ * @author Kevin
+ *
+ */
+abstract class NamedValuesView extends AbstractMap<String, Integer> {
+	
+	private final NameRegistry registry;
+	
+	NamedValuesView(NameRegistry registry) {
+		this.registry = registry;
+	}
+	
+	/**
+	 * @return The length of the underlying array.
+	 */
+	abstract int length();
+	
+	/**
+	 * @return Whether there's a value for an id.
+	 */
+	abstract boolean has(int id);
+	
+	abstract int value(int id);
+	
+	@Override
+	public Integer get(Object key) {
+		int id = idOf(key);
+		return id == NameRegistry.UNKNOWN ? null : value(id);
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return idOf(key) != NameRegistry.UNKNOWN;
+	}
+	
+	@Override
+	public Set<Entry<String, Integer>> entrySet() {
+		return new AbstractSet<Entry<String, Integer>>() {
+			
+			@Override
+			public Iterator<Entry<String, Integer>> iterator() {
+				return new Iterator<Entry<String, Integer>>() {
+					
+					private int next = find(0);
+					
+					@Override
+					public boolean hasNext() {
+						return next < length();
+					}
+					
+					@Override
+					public Entry<String, Integer> next() {
+						if(!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						int id = next;
+						next = find(id + 1);
+						return new SimpleImmutableEntry<String, Integer>(registry.getName(id), value(id));
+					}
+				};
+			}
+			
+			@Override
+			public int size() {
+				int size = 0;
+				for(int i = 0; i < length(); i++) {
+					if(has(i)) {
+						++size;
+					}
+				}
+				return size;
+			}
+		};
+	}
+	
+	private int find(int from) {
+		int id = from;
+		while(id < length() && !has(id)) {
+			++id;
+		}
+		return id;
+	}
+	
+	private int idOf(Object key) {
+		if(!(key instanceof String)) {
+			return NameRegistry.UNKNOWN;
+		}
+		int id = registry.getId((String) key);
+		if(id == NameRegistry.UNKNOWN || id >= length() || !has(id)) {
+			return NameRegistry.UNKNOWN;
+		}
+		return id;
+	}
+
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+/**
+ * Registry that gives each tag name a small, dense int id, so entities can 
+ * hold their tags as bits and test them with bit operations instead of 
+ * hashing strings.
+ * <p>
+ * The framework's tags are registered here, and games should register 
+ * theirs at startup so they get the low ids. Tags defined by cards are 
+ * registered the first time an entity is given them. The first 64 tags can
+ * be combined into a long mask with {@link #mask(String...)}, for testing 
+ * several tags at once with {@link GameEntity#hasAllTags(long)}.
+ * 
+ * @author Kevin
+ *
+ */
+public final class Tags {
+	
+	/**
+	 * The id returned for a name that isn't a registered tag.
+	 */
+	public static final int UNKNOWN = NameRegistry.UNKNOWN;
+	
+	/**
+	 * Tags with ids below this fit in a long mask.
+	 */
+	public static final int MASK_SIZE = 64;
+	
+	private static final NameRegistry registry = new NameRegistry();
+	
+	public static final int RULES = register(GameInstance.RULES);
+	public static final int IN_PLAY = register(GameInstance.IN_PLAY);
+	public static final int PLAYER = register(GameInstance.PLAYER);
+	
+	private Tags() {}
+	
+	/**
+	 * Register a tag, if it isn't already.
+	 * 
+	 * @param name
+	 * @return The tag's id.
+	 */
+	public static int register(String name) {
+		return registry.register(name);
+	}
+	
+	/**
+	 * Get the id of a tag, without registering it.
+	 * 
+	 * @param name
+	 * @return The id, or UNKNOWN if no tag with that name is registered.
+	 */
+	public static int getId(String name) {
+		return registry.getId(name);
+	}
+	
+	public static String getName(int id) {
+		return registry.getName(id);
+	}
+	
+	/**
+	 * Get the mask with the bits of some tags set, registering them if 
+	 * necessary.
+	 * 
+	 * @param tags
+	 * @return
+	 * @throws IllegalArgumentException if one of the tags is outside the 
+	 * first {@link #MASK_SIZE} ids.
+	 */
+	public static long mask(String... tags) {
+		long mask = 0;
+		for(String tag : tags) {
+			int id = register(tag);
+			if(id >= MASK_SIZE) {
+				throw new IllegalArgumentException("Tag " + tag + " doesn't fit in a tag mask");
+			}
+			mask |= 1L << id;
+		}
+		return mask;
+	}
+	
+	/**
+	 * @return The number of registered tags, which is one more than the 
+	 * largest id.
+	 */
+	public static int size() {
+		return registry.size();
+	}
+
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wx3.cardbattle.game.gameevents.EventTypes;
+import com.wx3.cardbattle.game.rules.EntityRule;
+
+/**
+ * Index from event types (see {@link EventTypes}) to the entities in play 
+ * that have a rule triggered by that type, so an event only needs to visit
+ * the entities with rules that care about it.
+ * <p>
+ * Entities keep the index up to date themselves, by calling {@link #update} 
+ * whenever their rules or play state change. Subscribers for each trigger 
+ * are kept in id order, which is also the order of the game's entity list, 
+ * so rules fire in the same order as a scan over every entity would.
+ * 
+ * @author Kevin
+ *
+ */
+class TriggerIndex {
+	
+	private static final Comparator<GameEntity> BY_ID = (a, b) -> Integer.compare(a.getId(), b.getId());
+	
+	private static final BitSet NONE = new BitSet();
+	
+	// Subscribers indexed by event type id, null for types with none:
+	private final List<List<GameEntity>> subscribers = new ArrayList<List<GameEntity>>();
+	private final Map<GameEntity, BitSet> entityTriggers = new IdentityHashMap<GameEntity, BitSet>();
+	
+	/**
+	 * Re-index an entity after its rules or play state have changed.
+	 * 
+	 * @param entity
+	 */
+	void update(GameEntity entity) {
+		BitSet triggers = NONE;
+		if(entity.isInPlay()) {
+			triggers = new BitSet();
+			for(EntityRule rule : entity.getRules()) {
+				if(rule.getTriggerId() != EventTypes.UNKNOWN) {
+					triggers.set(rule.getTriggerId());
+				}
+			}
+		}
+		BitSet old = entityTriggers.get(entity);
+		if(old == null) {
+			old = NONE;
+		}
+		if(triggers.equals(old)) return;
+		for(int type = old.nextSetBit(0); type >= 0; type = old.nextSetBit(type + 1)) {
+			if(!triggers.get(type)) {
+				unsubscribe(type, entity);
+			}
+		}
+		for(int type = triggers.nextSetBit(0); type >= 0; type = triggers.nextSetBit(type + 1)) {
+			if(!old.get(type)) {
+				subscribe(type, entity);
+			}
+		}
+		if(triggers.isEmpty()) {
+			entityTriggers.remove(entity);
+		} else {
+			entityTriggers.put(entity, triggers);
+		}
+	}
+	
+	/**
+	 * Drop an entity that has been removed from the game.
+	 * 
+	 * @param entity
+	 */
+	void remove(GameEntity entity) {
+		BitSet old = entityTriggers.remove(entity);
+		if(old != null) {
+			for(int type = old.nextSetBit(0); type >= 0; type = old.nextSetBit(type + 1)) {
+				unsubscribe(type, entity);
+			}
+		}
+	}
+	
+	/**
+	 * Re-index every entity from scratch.
+	 * 
+	 * @param entities
+	 */
+	void rebuild(List<? extends GameEntity> entities) {
+		Collections.fill(subscribers, null);
+		entityTriggers.clear();
+		for(GameEntity entity : entities) {
+			update(entity);
+		}
+	}
+	
+	/**
+	 * Get the subscriber for an event type that comes after the supplied id. 
+	 * Finding the next subscriber from the last one, rather than iterating 
+	 * over a list, means rules can change the subscribers while an event 
+	 * is being processed.
+	 * 
+	 * @param type		The event type id.
+	 * @param afterId	Zero to get the first subscriber.
+	 * @return The entity, or null if there are no more subscribers.
+	 */
+	GameEntity next(int type, int afterId) {
+		List<GameEntity> list = type < subscribers.size() ? subscribers.get(type) : null;
+		if(list == null) return null;
+		int low = 0;
+		int high = list.size();
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(list.get(mid).getId() <= afterId) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low < list.size() ? list.get(low) : null;
+	}
+	
+	/**
+	 * @param type	The event type id.
+	 * @return True if any entity in play has a rule for the event type.
+	 */
+	boolean hasSubscribers(int type) {
+		return type < subscribers.size() && subscribers.get(type) != null;
+	}
+	
+	private void subscribe(int type, GameEntity entity) {
+		while(type >= subscribers.size()) {
+			subscribers.add(null);
+		}
+		List<GameEntity> list = subscribers.get(type);
+		if(list == null) {
+			list = new ArrayList<GameEntity>();
+			subscribers.set(type, list);
+		}
+		int i = Collections.binarySearch(list, entity, BY_ID);
+		if(i < 0) {
+			list.add(-i - 1, entity);
+		}
+	}
+	
+	private void unsubscribe(int type, GameEntity entity) {
+		List<GameEntity> list = subscribers.get(type);
+		if(list == null) return;
+		int i = Collections.binarySearch(list, entity, BY_ID);
+		if(i >= 0) {
+			list.remove(i);
+		}
+		if(list.isEmpty()) {
+			subscribers.set(type, null);
+		}
+	}
+
+}
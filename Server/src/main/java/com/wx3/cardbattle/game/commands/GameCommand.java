@@ -60,6 +60,18 @@ public abstract class GameCommand<T extends GameInstance<?>> {
 	
 	public abstract void execute(T game); 
 	
+	/**
+	 * Does executing this command change the game's state directly? Commands
+	 * that only queue events, like chat, can return false, so the game 
+	 * doesn't need to save its state in case the command has to be rolled 
+	 * back unless a rule reacts to one of the events.
+	 * 
+	 * @return
+	 */
+	public boolean changesState() {
+		return true;
+	}
+	
 	public int getId() {
 		return id;
 	}
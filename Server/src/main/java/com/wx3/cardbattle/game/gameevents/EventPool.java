@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.gameevents;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-thread pools of processed events that can be reused. Games that are 
+ * simulations (such as the copies the AI uses to try out commands) never 
+ * broadcast their events or keep them in their history, so once an event 
+ * has been processed nothing refers to it. Events that happen constantly, 
+ * like damage, can then be returned here and reused instead of becoming 
+ * garbage.
+ * <p>
+ * Only events that override {@link GameEvent#isPoolable()} are pooled. 
+ * Games that aren't simulations never use the pool, so their events stay 
+ * immutable once they're created.
+ * 
+ * @author Kevin
+ *
+ */
+public final class EventPool {
+	
+	// The most events of each type each thread keeps:
+	private static final int MAX_POOLED = 64;
+	
+	private static final ThreadLocal<Pools> pools = ThreadLocal.withInitial(Pools::new);
+	
+	private static final class Pools {
+		
+		// Pools indexed by event type id:
+		private final List<ArrayDeque<GameEvent>> byType = new ArrayList<ArrayDeque<GameEvent>>();
+		
+		ArrayDeque<GameEvent> get(int type) {
+			while(type >= byType.size()) {
+				byType.add(new ArrayDeque<GameEvent>());
+			}
+			return byType.get(type);
+		}
+	}
+	
+	private EventPool() {}
+	
+	/**
+	 * Take a pooled event of a particular type.
+	 * 
+	 * @param type
+	 * @return The event, or null if there aren't any. The caller should 
+	 * re-initialize all of its fields.
+	 */
+	public static <E extends GameEvent> E acquire(Class<E> type) {
+		return type.cast(pools.get().get(EventTypes.getId(type)).poll());
+	}
+	
+	/**
+	 * Return an event to the pool, if it can be pooled. The event must not
+	 * be used again by the caller.
+	 * 
+	 * @param event
+	 */
+	public static void release(GameEvent event) {
+		if(!event.isPoolable()) return;
+		ArrayDeque<GameEvent> pool = pools.get().get(EventTypes.getId(event.getClass()));
+		if(pool.size() < MAX_POOLED) {
+			event.clear();
+			pool.push(event);
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.gameevents;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry that gives each {@link GameEvent} class a small, dense int id, so 
+ * rules can be matched to events by comparing ints instead of class names.
+ * <p>
+ * Rules name their trigger by the event's simple class name, so simple names
+ * must be unique. The framework's events are registered here, and games 
+ * should register theirs at startup so that rules with triggers that don't 
+ * match any event can be rejected when they're imported. An event class 
+ * that hasn't been registered is given an id the first time it's seen.
+ * 
+ * @author Kevin
+ *
+ */
+public final class EventTypes {
+	
+	/**
+	 * The id returned for a trigger name that doesn't match any event.
+	 */
+	public static final int UNKNOWN = -1;
+	
+	private static final Map<String, Integer> idsByName = new ConcurrentHashMap<String, Integer>();
+	private static final List<Class<? extends GameEvent>> types = new CopyOnWriteArrayList<Class<? extends GameEvent>>();
+	
+	private static final ClassValue<Integer> ids = new ClassValue<Integer>() {
+		@SuppressWarnings("unchecked")
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			return register((Class<? extends GameEvent>) type);
+		}
+	};
+	
+	static {
+		register(AddRuleEvent.class);
+		register(BuffRecalc.class);
+		register(ChatEvent.class);
+		register(EndTurnEvent.class);
+		register(GameStartEvent.class);
+		register(RemoveRulesEvent.class);
+		register(StartTurnEvent.class);
+	}
+	
+	public static final int BUFF_RECALC = getId(BuffRecalc.class);
+	
+	private EventTypes() {}
+	
+	/**
+	 * Register an event class, if it isn't already.
+	 * 
+	 * @param type
+	 * @return The event's id.
+	 * @throws IllegalArgumentException if a different event class with the 
+	 * same simple name is already registered.
+	 */
+	public static synchronized int register(Class<? extends GameEvent> type) {
+		String name = type.getSimpleName();
+		Integer id = idsByName.get(name);
+		if(id != null) {
+			if(types.get(id) != type) {
+				throw new IllegalArgumentException("Event " + type.getName() + " has the same name as " + 
+						types.get(id).getName());
+			}
+			return id;
+		}
+		id = types.size();
+		types.add(type);
+		idsByName.put(name, id);
+		return id;
+	}
+	
+	/**
+	 * Get the id of an event class, registering it if necessary.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public static int getId(Class<? extends GameEvent> type) {
+		return ids.get(type);
+	}
+	
+	/**
+	 * Get the id of an event by its simple name.
+	 * 
+	 * @param name
+	 * @return The id, or UNKNOWN if no event with that name is registered.
+	 */
+	public static int getId(String name) {
+		Integer id = idsByName.get(name);
+		return id == null ? UNKNOWN : id;
+	}
+	
+	public static boolean isKnown(String name) {
+		return idsByName.containsKey(name);
+	}
+	
+	public static Class<? extends GameEvent> getType(int id) {
+		return types.get(id);
+	}
+	
+	/**
+	 * @return The number of registered events, which is one more than the 
+	 * largest id.
+	 */
+	public static int size() {
+		return types.size();
+	}
+
+}
@@ -44,4 +44,33 @@ public abstract class GameEvent {
 	protected transient GameEntity cause;
 	protected int causeId;
 	
+	/**
+	 * The entity this event is aimed at, if any. Events with a target 
+	 * should override this.
+	 * 
+	 * @return
+	 */
+	public GameEntity getTarget() {
+		return null;
+	}
+	
+	/**
+	 * Can this event be reused through the {@link EventPool} once it has 
+	 * been processed? Events that override this should also override clear.
+	 * 
+	 * @return
+	 */
+	protected boolean isPoolable() {
+		return false;
+	}
+	
+	/**
+	 * Drop the event's references before it's pooled, so a pooled event 
+	 * doesn't keep a finished game's entities alive.
+	 */
+	protected void clear() {
+		cause = null;
+		causeId = 0;
+	}
+	
 }
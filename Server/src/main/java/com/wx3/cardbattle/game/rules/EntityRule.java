@@ -32,12 +32,19 @@ import javax.persistence.Transient;
 
 import com.google.common.base.Strings;
 import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.RuleException;
+import com.wx3.cardbattle.game.gameevents.EventTypes;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 
 /**
  * An entity rule is a script that is fired in response to a particular
  * GameEvent. The eventTrigger is the (simple) name of the GameEvent
- * class this rule can respond to. E.g., DrawCardEvent.
+ * class this rule can respond to. E.g., DrawCardEvent. The name is 
+ * resolved to an {@link EventTypes} id the first time it's needed.
+ * <p>
+ * A rule may also have a native action (see {@link NativeActions}), 
+ * which is run instead of the script so the rule doesn't need the 
+ * script engine. The script remains as the fallback.
  * 
  * Rule scripts should be immutable, since all references to the same
  * rule may be backed by the same underlying object.
@@ -64,11 +71,27 @@ public class EntityRule {
 	 */
 	private String triggeredScript;
 	
+	/**
+	 * The native action declaration run instead of the script, if any.
+	 */
+	private String nativeAction;
+	
+	@Transient
+	private RuleAction action;
+	
+	@Transient
+	private RuleDependencies dependencies;
+	
+	// The trigger's id in EventTypes, once it has been resolved:
+	@Transient
+	private int triggerId = EventTypes.UNKNOWN;
+	
 	private boolean permanent;
 	
 	public static EntityRule createRule(Class<? extends GameEvent> trigger, String script, String id, String description) {
 		EntityRule rule = new EntityRule();
 		rule.eventTrigger = trigger.getSimpleName();
+		rule.triggerId = EventTypes.getId(trigger);
 		rule.triggeredScript = script;
 		rule.id = id;
 		rule.description = description;
@@ -92,6 +115,7 @@ public class EntityRule {
 		this.id = rule.id;
 		this.description = rule.description;
 		this.permanent = rule.permanent;
+		this.nativeAction = rule.nativeAction;
 	}
 	
 	public String getId() {
@@ -102,6 +126,28 @@ public class EntityRule {
 		return eventTrigger;
 	}
 	
+	/**
+	 * Get the {@link EventTypes} id of the event that triggers this rule.
+	 * 
+	 * @return The id, or EventTypes.UNKNOWN if there is no event with the 
+	 * trigger's name.
+	 */
+	public int getTriggerId() {
+		// Unknown triggers aren't cached, in case the event is registered later:
+		if(triggerId == EventTypes.UNKNOWN && eventTrigger != null) {
+			triggerId = EventTypes.getId(eventTrigger);
+		}
+		return triggerId;
+	}
+	
+	/**
+	 * @param typeId	An {@link EventTypes} id.
+	 * @return True if this rule is triggered by events of that type.
+	 */
+	public boolean isTriggered(int typeId) {
+		return typeId != EventTypes.UNKNOWN && getTriggerId() == typeId;
+	}
+	
 	public boolean isTriggered(String trigger) {
 		if(trigger.equals(eventTrigger)) {
 			return true;
@@ -116,9 +162,8 @@ public class EntityRule {
 			if(Strings.isNullOrEmpty(eventTrigger)) return true;
 			return false;
 		}
-		// Otherwise we fire if the event class's simple name matches our trigger string: 
-		String className = event.getClass().getSimpleName();
-		return isTriggered(className);
+		// Otherwise we fire if the event class matches our trigger: 
+		return isTriggered(EventTypes.getId(event.getClass()));
 	}
 	
 	public boolean isPermanent() {
@@ -129,6 +174,51 @@ public class EntityRule {
 		return triggeredScript;
 	}
 	
+	public String getNativeAction() {
+		return nativeAction;
+	}
+	
+	/**
+	 * Set the native action declaration for this rule.
+	 * 
+	 * @param nativeAction
+	 * @throws RuleException if the declaration is invalid.
+	 */
+	public void setNativeAction(String nativeAction) {
+		this.action = Strings.isNullOrEmpty(nativeAction) ? null : NativeActions.parse(nativeAction);
+		this.nativeAction = nativeAction;
+		this.dependencies = null;
+	}
+	
+	/**
+	 * Get the parsed native action for this rule.
+	 * 
+	 * @return The action, or null if the rule only has a script.
+	 */
+	public RuleAction getAction() {
+		if(action == null && !Strings.isNullOrEmpty(nativeAction)) {
+			action = NativeActions.parse(nativeAction);
+		}
+		return action;
+	}
+	
+	/**
+	 * Get what this rule reads and writes, which is used to decide which 
+	 * buffs need to be re-run when stats are recalculated.
+	 * 
+	 * @return
+	 */
+	public RuleDependencies getDependencies() {
+		if(dependencies == null) {
+			if(!Strings.isNullOrEmpty(nativeAction)) {
+				dependencies = RuleDependencies.ofNativeAction(nativeAction);
+			} else {
+				dependencies = RuleDependencies.ofScript(triggeredScript);
+			}
+		}
+		return dependencies;
+	}
+	
 	@Override
 	public String toString() {
 		return "EntityRule_" + id;
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.Collection;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+
+import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.RuleException;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+
+/**
+ * Runs every rule and validator as a Nashorn script, ignoring native 
+ * actions. Scripts are compiled once and cached by the 
+ * {@link ScriptEngineProvider}.
+ * 
+ * @author Kevin
+ *
+ */
+public class NashornRuleEngine implements RuleEngine {
+	
+	/**
+	 * A game's script context, with the game bound to its global object.
+	 */
+	static class NashornRuleContext implements RuleContext {
+		
+		private final ScriptCache scriptCache;
+		private final ScriptContext scriptContext;
+		private final Bindings scriptScope;
+		
+		NashornRuleContext(GameInstance<?> game) {
+			ScriptEngineProvider provider = ScriptEngineProvider.getInstance();
+			this.scriptCache = provider.getScriptCache();
+			this.scriptContext = provider.createContext(game);
+			this.scriptScope = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
+		}
+
+		@Override
+		public void trigger(EntityRule rule, GameEntity entity, GameEvent event) {
+			// Let the rule access the event and entity objects (the game 
+			// is already bound to the script context):
+			scriptScope.put("event", event);
+			scriptScope.put("entity", entity);
+			try {
+				scriptCache.getRuleScript(rule).eval(scriptContext);
+			} catch (ScriptException ex) {
+				throw new RuleException("Error in rule " + rule.getId() + ": " + ex.getMessage(), ex);
+			}
+		}
+
+		@Override
+		public void buff(EntityRule rule, GameEntity entity) {
+			scriptScope.put("entity", entity);
+			try {
+				scriptCache.getRuleScript(rule).eval(scriptContext);
+			} catch (ScriptException ex) {
+				throw new RuleException("Error in buff " + rule.getId() + ": " + ex.getMessage(), ex);
+			}
+		}
+
+		@Override
+		public String validate(PlayValidator validator, GameEntity target) {
+			// Validators report a problem by setting "error":
+			scriptScope.put("target", target);
+			scriptScope.put("error", null);
+			try {
+				scriptCache.getValidatorScript(validator).eval(scriptContext);
+			} catch (ScriptException ex) {
+				throw new RuleException(ex.getMessage(), ex);
+			}
+			Object error = scriptScope.get("error");
+			return error == null ? null : error.toString();
+		}
+	}
+	
+	@Override
+	public String getName() {
+		return RuleEngines.NASHORN;
+	}
+
+	@Override
+	public void compileRules(Collection<EntityRule> rules) {
+		ScriptEngineProvider.getInstance().getScriptCache().compileRules(rules);
+	}
+
+	@Override
+	public void compileValidators(Collection<PlayValidator> validators) {
+		ScriptEngineProvider.getInstance().getScriptCache().compileValidators(validators);
+	}
+
+	@Override
+	public RuleContext createContext(GameInstance<?> game) {
+		return new NashornRuleContext(game);
+	}
+
+}
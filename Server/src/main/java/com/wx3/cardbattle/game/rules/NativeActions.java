@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.wx3.cardbattle.game.EntityStats;
+import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.RuleException;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+
+/**
+ * Registry of the native rule actions a game understands. A native action is
+ * declared as a verb followed by its arguments, e.g. "DAMAGE target 2", and
+ * several actions can be separated by semicolons. Targets are either "self"
+ * (the entity the rule is attached to) or "target" (the event's target).
+ * <p>
+ * Verbs can also register a script pattern, so that scripts which do nothing
+ * more than call the equivalent game method can be translated to the native
+ * form automatically when rules are imported. 
+ * <p>
+ * The generic verbs are:
+ * <ul>
+ * <li>BUFF &lt;target&gt; &lt;stat&gt; &lt;amount&gt;</li>
+ * <li>ADD_RULE &lt;target&gt; &lt;ruleId&gt;</li>
+ * <li>REMOVE_RULES &lt;target&gt;</li>
+ * </ul>
+ * 
+ * @author Kevin
+ *
+ */
+public final class NativeActions {
+	
+	/**
+	 * Creates an action from the arguments following its verb.
+	 */
+	public interface Factory {
+		public RuleAction create(String[] args);
+	}
+	
+	/**
+	 * Selects the entity an action applies to.
+	 */
+	public interface Target {
+		public GameEntity select(GameEntity entity, GameEvent event);
+	}
+	
+	/**
+	 * Script patterns should use this to match an entity expression, which
+	 * can then be converted to a target with {@link #targetName(String)}.
+	 */
+	public static final String TARGET_PATTERN = "(entity|event\\.getTarget\\(\\))";
+	
+	/**
+	 * Script patterns should use this to match a rule's cause argument.
+	 */
+	public static final String CAUSE_PATTERN = "entity";
+	
+	/**
+	 * Script patterns should use this to match a quoted name, e.g. a stat.
+	 */
+	public static final String NAME_PATTERN = "['\"](\\w+)['\"]";
+	
+	private static final Map<String, Factory> factories = new ConcurrentHashMap<String, Factory>();
+	
+	// Script patterns are tried in registration order:
+	private static final Map<String, Function<Matcher, String>> patterns = 
+			new LinkedHashMap<String, Function<Matcher, String>>();
+	
+	static {
+		register("BUFF", args -> {
+			checkArgs("BUFF", args, 3);
+			Target target = parseTarget(args[0]);
+			int stat = EntityStats.REGISTRY.register(args[1]);
+			int amount = parseAmount(args[2]);
+			return (game, entity, event) -> game.buffEntity(target.select(entity, event), stat, amount);
+		});
+		registerPattern("buffEntity\\(" + TARGET_PATTERN + ",\\s*" + NAME_PATTERN + ",\\s*(-?\\d+)\\)", 
+				m -> "BUFF " + targetName(m.group(1)) + " " + m.group(2) + " " + m.group(3));
+		
+		register("ADD_RULE", args -> {
+			checkArgs("ADD_RULE", args, 2);
+			Target target = parseTarget(args[0]);
+			String ruleId = args[1];
+			return (game, entity, event) -> game.addRule(target.select(entity, event), ruleId, entity);
+		});
+		registerPattern("addRule\\(" + TARGET_PATTERN + ",\\s*" + NAME_PATTERN + ",\\s*" + CAUSE_PATTERN + "\\)", 
+				m -> "ADD_RULE " + targetName(m.group(1)) + " " + m.group(2));
+		
+		register("REMOVE_RULES", args -> {
+			checkArgs("REMOVE_RULES", args, 1);
+			Target target = parseTarget(args[0]);
+			return (game, entity, event) -> game.removeRules(target.select(entity, event));
+		});
+		registerPattern("removeRules\\(" + TARGET_PATTERN + "\\)", 
+				m -> "REMOVE_RULES " + targetName(m.group(1)));
+	}
+	
+	private NativeActions() {}
+	
+	/**
+	 * Register a native action verb. Registering an existing verb replaces it.
+	 * 
+	 * @param verb
+	 * @param factory
+	 */
+	public static void register(String verb, Factory factory) {
+		factories.put(verb, factory);
+	}
+	
+	/**
+	 * Register a script statement pattern that can be translated to a native
+	 * action. The pattern has to match the whole statement.
+	 * 
+	 * @param regex			The regular expression to match a script statement.
+	 * @param translation	Creates the native declaration from the match.
+	 */
+	public static void registerPattern(String regex, Function<Matcher, String> translation) {
+		synchronized(patterns) {
+			patterns.put(regex, translation);
+		}
+	}
+	
+	/**
+	 * Parse a native action declaration.
+	 * 
+	 * @param declaration
+	 * @return
+	 * @throws RuleException if the declaration is invalid.
+	 */
+	public static RuleAction parse(String declaration) {
+		List<RuleAction> actions = new ArrayList<RuleAction>();
+		for(String statement : declaration.split(";")) {
+			statement = statement.trim();
+			if(statement.isEmpty()) continue;
+			String[] tokens = statement.split("\\s+");
+			Factory factory = factories.get(tokens[0]);
+			if(factory == null) {
+				throw new RuleException("Unknown native action '" + tokens[0] + "'");
+			}
+			String[] args = new String[tokens.length - 1];
+			System.arraycopy(tokens, 1, args, 0, args.length);
+			actions.add(factory.create(args));
+		}
+		if(actions.isEmpty()) {
+			throw new RuleException("Empty native action");
+		}
+		if(actions.size() == 1) {
+			return actions.get(0);
+		}
+		RuleAction[] sequence = actions.toArray(new RuleAction[actions.size()]);
+		return (game, entity, event) -> {
+			for(RuleAction action : sequence) {
+				action.execute(game, entity, event);
+			}
+		};
+	}
+	
+	/**
+	 * Try to translate a script to an equivalent native action declaration.
+	 * Every statement in the script has to match a registered pattern.
+	 * 
+	 * @param script
+	 * @return The declaration, or null if the script can't be translated.
+	 */
+	public static String translate(String script) {
+		if(script == null) return null;
+		List<String> declarations = new ArrayList<String>();
+		for(String statement : script.split(";")) {
+			statement = statement.trim();
+			if(statement.isEmpty()) continue;
+			String declaration = translateStatement(statement);
+			if(declaration == null) return null;
+			declarations.add(declaration);
+		}
+		if(declarations.isEmpty()) return null;
+		return String.join("; ", declarations);
+	}
+	
+	private static String translateStatement(String statement) {
+		synchronized(patterns) {
+			for(Map.Entry<String, Function<Matcher, String>> entry : patterns.entrySet()) {
+				Matcher matcher = Pattern.compile(entry.getKey()).matcher(statement);
+				if(matcher.matches()) {
+					return entry.getValue().apply(matcher);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Convert a script entity expression matched by {@link #TARGET_PATTERN}
+	 * to a target name.
+	 * 
+	 * @param expression
+	 * @return
+	 */
+	public static String targetName(String expression) {
+		return expression.equals("entity") ? "self" : "target";
+	}
+	
+	/**
+	 * Parse a target argument.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static Target parseTarget(String name) {
+		switch(name) {
+			case "self" : return (entity, event) -> entity;
+			case "target" : return (entity, event) -> event == null ? null : event.getTarget();
+			default : throw new RuleException("Unknown native action target '" + name + "'");
+		}
+	}
+	
+	/**
+	 * Parse an integer argument.
+	 * 
+	 * @param amount
+	 * @return
+	 */
+	public static int parseAmount(String amount) {
+		try {
+			return Integer.parseInt(amount);
+		} catch (NumberFormatException ex) {
+			throw new RuleException("Invalid native action amount '" + amount + "'");
+		}
+	}
+	
+	/**
+	 * Check that a verb got at least the expected number of arguments.
+	 * 
+	 * @param verb
+	 * @param args
+	 * @param count
+	 */
+	public static void checkArgs(String verb, String[] args, int count) {
+		if(args.length < count) {
+			throw new RuleException(verb + " expects " + count + " arguments");
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+
+/**
+ * Runs rules that declare a native action directly in Java, see 
+ * {@link NativeActions}. Rules without one, and all validators, fall back 
+ * to the {@link NashornRuleEngine}. A game's script context is only created 
+ * the first time it needs to run a script, so games (and AI copies) that 
+ * only use native rules never pay for a script global.
+ * 
+ * @author Kevin
+ *
+ */
+public class NativeRuleEngine implements RuleEngine {
+	
+	final static Logger logger = LoggerFactory.getLogger(NativeRuleEngine.class);
+	
+	static class NativeRuleContext implements RuleContext {
+		
+		private final GameInstance<?> game;
+		private final NashornRuleEngine fallback;
+		private RuleContext scriptContext;
+		
+		NativeRuleContext(GameInstance<?> game, NashornRuleEngine fallback) {
+			this.game = game;
+			this.fallback = fallback;
+		}
+		
+		private RuleContext getScriptContext() {
+			if(scriptContext == null) {
+				scriptContext = fallback.createContext(game);
+			}
+			return scriptContext;
+		}
+
+		@Override
+		public void trigger(EntityRule rule, GameEntity entity, GameEvent event) {
+			RuleAction action = rule.getAction();
+			if(action != null) {
+				action.execute(game, entity, event);
+			} else {
+				getScriptContext().trigger(rule, entity, event);
+			}
+		}
+
+		@Override
+		public void buff(EntityRule rule, GameEntity entity) {
+			RuleAction action = rule.getAction();
+			if(action != null) {
+				action.execute(game, entity, null);
+			} else {
+				getScriptContext().buff(rule, entity);
+			}
+		}
+
+		@Override
+		public String validate(PlayValidator validator, GameEntity target) {
+			return getScriptContext().validate(validator, target);
+		}
+	}
+	
+	private final NashornRuleEngine fallback = new NashornRuleEngine();
+	
+	@Override
+	public String getName() {
+		return RuleEngines.NATIVE;
+	}
+
+	/**
+	 * Parse the native actions of the rules that have one, and compile the 
+	 * scripts of the rest.
+	 */
+	@Override
+	public void compileRules(Collection<EntityRule> rules) {
+		List<EntityRule> scripted = new ArrayList<EntityRule>();
+		for(EntityRule rule : rules) {
+			if(rule.getAction() == null) {
+				scripted.add(rule);
+			}
+		}
+		logger.info((rules.size() - scripted.size()) + " of " + rules.size() + " rules are native");
+		fallback.compileRules(scripted);
+	}
+
+	@Override
+	public void compileValidators(Collection<PlayValidator> validators) {
+		fallback.compileValidators(validators);
+	}
+
+	@Override
+	public RuleContext createContext(GameInstance<?> game) {
+		return new NativeRuleContext(game, fallback);
+	}
+
+}
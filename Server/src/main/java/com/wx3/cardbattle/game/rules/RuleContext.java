@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+
+/**
+ * Runs rules and validators on behalf of a single game. A context belongs 
+ * to one game and is only used by one thread at a time, which GameInstance 
+ * guarantees by synchronizing on the game.
+ * 
+ * @author Kevin
+ *
+ */
+public interface RuleContext {
+	
+	/**
+	 * Execute a rule that was triggered by an event.
+	 * 
+	 * @param rule
+	 * @param entity	The entity the rule is attached to.
+	 * @param event		The triggering event.
+	 * @throws RuleException if the rule fails.
+	 */
+	public void trigger(EntityRule rule, GameEntity entity, GameEvent event);
+	
+	/**
+	 * Execute a buff rule during stat recalculation.
+	 * 
+	 * @param rule
+	 * @param entity	The entity the rule is attached to.
+	 * @throws RuleException if the rule fails.
+	 */
+	public void buff(EntityRule rule, GameEntity entity);
+	
+	/**
+	 * Check a validator against the target of a play.
+	 * 
+	 * @param validator
+	 * @param target	The target, or null if there isn't one.
+	 * @return An error message if the play is invalid, otherwise null.
+	 * @throws RuleException if the validator fails.
+	 */
+	public String validate(PlayValidator validator, GameEntity target);
+
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What a buff rule reads and writes, so that stats only need to be 
+ * recalculated for entities whose buffs' inputs have changed. 
+ * <p>
+ * A rule is <i>local</i> if it only buffs the entity it's attached to. It 
+ * reads a set of tag, stat and var names from its own entity, and may also 
+ * read the <i>world</i>, i.e. anything else in the game, in which case it 
+ * has to be re-run whenever anything changes. Anything the analysis doesn't
+ * understand is treated as reading the world and writing to other entities, 
+ * which always falls back to a full recalculation.
+ * <p>
+ * Dependencies are worked out from native actions (only "BUFF self" is 
+ * local) or from the rule's script. In scripts, entity.hasTag('X'), 
+ * entity.getStat('X'), entity.getBaseStat('X') and entity.getVar('X') read X, 
+ * and buffEntity(entity, 'X', n) writes X. Games can register their own 
+ * entity accessors with {@link #registerAccessor(String, String...)}.
+ * 
+ * @author Kevin
+ *
+ */
+public final class RuleDependencies {
+	
+	/**
+	 * Dependencies of a rule we can't analyze.
+	 */
+	public static final RuleDependencies UNKNOWN = new RuleDependencies(
+			Collections.<String>emptySet(), Collections.<String>emptySet(), true, true);
+	
+	private static final String NAME = "['\"](\\w+)['\"]";
+	
+	private static final Pattern BUFF_CALL = Pattern.compile("buffEntity\\(\\s*([^,]*?)\\s*,\\s*([^,]*?)\\s*,");
+	private static final Pattern ENTITY_CALL = Pattern.compile("\\bentity\\.(\\w+)\\(\\s*([^)]*?)\\s*\\)");
+	private static final Pattern NAME_ARGUMENT = Pattern.compile(NAME);
+	private static final Pattern STRING_LITERAL = Pattern.compile("'[^']*'|\"[^\"]*\"");
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+	private static final Pattern NATIVE_BUFF = Pattern.compile("BUFF\\s+self\\s+(\\w+)\\s+-?\\d+");
+	
+	// Identifiers a script can use without reading anything else:
+	private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+			"entity", "if", "else", "true", "false", "null", "undefined"));
+	
+	// Entity methods that take the name they read as an argument:
+	private static final Set<String> NAMED_ACCESSORS = new HashSet<String>(Arrays.asList(
+			"hasTag", "getStat", "getBaseStat", "getVar"));
+	
+	// Entity methods without arguments, with the names they read:
+	private static final Map<String, Set<String>> accessors = new ConcurrentHashMap<String, Set<String>>();
+	
+	static {
+		registerAccessor("isInPlay", "IN_PLAY");
+	}
+	
+	/**
+	 * Register an entity method (taking no arguments) that scripts can call,
+	 * and the tags, stats and vars it reads.
+	 * 
+	 * @param method
+	 * @param names
+	 */
+	public static void registerAccessor(String method, String... names) {
+		accessors.put(method, Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(names))));
+	}
+	
+	/**
+	 * Work out the dependencies of a native action declaration.
+	 * 
+	 * @param declaration
+	 * @return
+	 */
+	public static RuleDependencies ofNativeAction(String declaration) {
+		Set<String> writes = new HashSet<String>();
+		for(String statement : declaration.split(";")) {
+			statement = statement.trim();
+			if(statement.isEmpty()) continue;
+			Matcher matcher = NATIVE_BUFF.matcher(statement);
+			if(!matcher.matches()) {
+				return UNKNOWN;
+			}
+			writes.add(matcher.group(1));
+		}
+		return new RuleDependencies(Collections.<String>emptySet(), writes, false, false);
+	}
+	
+	/**
+	 * Work out the dependencies of a script.
+	 * 
+	 * @param script
+	 * @return
+	 */
+	public static RuleDependencies ofScript(String script) {
+		if(script == null) {
+			return UNKNOWN;
+		}
+		Set<String> reads = new HashSet<String>();
+		Set<String> writes = new HashSet<String>();
+		boolean readsWorld = false;
+		boolean writesOthers = false;
+		
+		// Buffs:
+		StringBuffer remainder = new StringBuffer();
+		Matcher buff = BUFF_CALL.matcher(script);
+		while(buff.find()) {
+			Matcher stat = NAME_ARGUMENT.matcher(buff.group(2));
+			if(!buff.group(1).equals("entity") || !stat.matches()) {
+				writesOthers = true;
+			} else {
+				writes.add(stat.group(1));
+			}
+			// Leave the rest of the arguments to be checked:
+			buff.appendReplacement(remainder, "");
+		}
+		buff.appendTail(remainder);
+		
+		// Reads from the rule's entity:
+		String rest = remainder.toString();
+		remainder = new StringBuffer();
+		Matcher call = ENTITY_CALL.matcher(rest);
+		while(call.find()) {
+			String method = call.group(1);
+			Matcher name = NAME_ARGUMENT.matcher(call.group(2));
+			if(NAMED_ACCESSORS.contains(method) && name.matches()) {
+				reads.add(name.group(1));
+			} else if(accessors.containsKey(method) && call.group(2).isEmpty()) {
+				reads.addAll(accessors.get(method));
+			} else {
+				readsWorld = true;
+				writesOthers = true;
+			}
+			call.appendReplacement(remainder, "");
+		}
+		call.appendTail(remainder);
+		
+		// Anything else (other functions, variables, other entities) could
+		// read or change anything:
+		rest = STRING_LITERAL.matcher(remainder.toString()).replaceAll("");
+		Matcher identifier = IDENTIFIER.matcher(rest);
+		while(identifier.find()) {
+			if(!KEYWORDS.contains(identifier.group())) {
+				readsWorld = true;
+				writesOthers = true;
+				break;
+			}
+		}
+		return new RuleDependencies(reads, writes, readsWorld, writesOthers);
+	}
+	
+	private final Set<String> reads;
+	private final Set<String> writes;
+	private final boolean readsWorld;
+	private final boolean writesOthers;
+	
+	private RuleDependencies(Set<String> reads, Set<String> writes, boolean readsWorld, boolean writesOthers) {
+		this.reads = Collections.unmodifiableSet(reads);
+		this.writes = Collections.unmodifiableSet(writes);
+		this.readsWorld = readsWorld;
+		this.writesOthers = writesOthers;
+	}
+	
+	/**
+	 * @return The tags, stats and vars the rule reads from its own entity.
+	 */
+	public Set<String> getReads() {
+		return reads;
+	}
+	
+	/**
+	 * @return The stats the rule buffs on its own entity.
+	 */
+	public Set<String> getWrites() {
+		return writes;
+	}
+	
+	/**
+	 * @return True if the rule may read anything besides its own entity.
+	 */
+	public boolean readsWorld() {
+		return readsWorld;
+	}
+	
+	/**
+	 * @return True if the rule only changes its own entity.
+	 */
+	public boolean isLocal() {
+		return !writesOthers;
+	}
+	
+	/**
+	 * Does the rule read any of the changed names?
+	 * 
+	 * @param changed
+	 * @return
+	 */
+	public boolean readsAny(Collection<String> changed) {
+		if(reads.isEmpty()) return false;
+		for(String name : changed) {
+			if(reads.contains(name)) return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		if(this == UNKNOWN) return "RuleDependencies(unknown)";
+		return "RuleDependencies(reads=" + reads + (readsWorld ? "+world" : "") + 
+				", writes=" + writes + (writesOthers ? "+others" : "") + ")";
+	}
+
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.Collection;
+
+import com.wx3.cardbattle.game.GameInstance;
+
+/**
+ * A backend that executes {@link EntityRule}s and {@link PlayValidator}s. 
+ * Each game gets its own {@link RuleContext} from the engine, and a single 
+ * engine is shared by every game, so implementations must be thread safe.
+ * <p>
+ * The engine games use is selected at startup with 
+ * {@link GameInstance#setDefaultRuleEngine(RuleEngine)}.
+ * 
+ * @author Kevin
+ *
+ */
+public interface RuleEngine {
+	
+	/**
+	 * @return The name the engine is selected by, see {@link RuleEngines}.
+	 */
+	public String getName();
+	
+	/**
+	 * Prepare a collection of rules for execution, e.g. by compiling them.
+	 * 
+	 * @param rules
+	 * @throws RuleException if a rule is invalid.
+	 */
+	public void compileRules(Collection<EntityRule> rules);
+	
+	/**
+	 * Prepare a collection of validators for execution.
+	 * 
+	 * @param validators
+	 * @throws RuleException if a validator is invalid.
+	 */
+	public void compileValidators(Collection<PlayValidator> validators);
+	
+	/**
+	 * Create the context a game's rules run in.
+	 * 
+	 * @param game
+	 * @return
+	 */
+	public RuleContext createContext(GameInstance<?> game);
+
+}
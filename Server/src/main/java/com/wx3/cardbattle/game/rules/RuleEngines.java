@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+/**
+ * Creates {@link RuleEngine}s by name, so the engine can be chosen in 
+ * configuration.
+ * 
+ * @author Kevin
+ *
+ */
+public final class RuleEngines {
+	
+	/**
+	 * Runs everything as scripts.
+	 */
+	public static final String NASHORN = "nashorn";
+	
+	/**
+	 * Runs native actions in Java, with scripts as a fallback.
+	 */
+	public static final String NATIVE = "native";
+	
+	private RuleEngines() {}
+	
+	/**
+	 * Create the rule engine with the given name.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws IllegalArgumentException if there's no engine with that name.
+	 */
+	public static RuleEngine create(String name) {
+		switch(name) {
+			case NASHORN : return new NashornRuleEngine();
+			case NATIVE : return new NativeRuleEngine();
+			default : throw new IllegalArgumentException("Unknown rule engine '" + name + "'");
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in profiler for rule execution. When enabled, games record the time 
+ * spent running each {@link EntityRule} (both triggered rules and buffs),
+ * each {@link PlayValidator} and each stat recalculation, keyed by rule or 
+ * validator id. 
+ * <p>
+ * For each key we keep the invocation count, the total and maximum time, 
+ * and a histogram of latencies in power of two buckets, from which 
+ * percentiles can be estimated. Recording is lock free, so it can be left 
+ * on in production, and the results can be dumped to the log periodically
+ * to find the expensive cards.
+ * 
+ * @author Kevin
+ *
+ */
+public final class RuleProfiler {
+	
+	final static Logger logger = LoggerFactory.getLogger(RuleProfiler.class);
+	
+	/**
+	 * What was being timed.
+	 */
+	public enum Kind {
+		RULE, BUFF, VALIDATOR, RECALCULATION
+	}
+	
+	// Bucket i holds latencies from 2^i up to 2^(i+1) nanoseconds:
+	private static final int BUCKETS = 64;
+	
+	/**
+	 * The timings for a single rule, validator or recalculation.
+	 */
+	public static final class Entry {
+		
+		private final Kind kind;
+		private final String id;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+		private volatile long maxNanos;
+		
+		Entry(Kind kind, String id) {
+			this.kind = kind;
+			this.id = id;
+		}
+		
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			histogram.incrementAndGet(bucket(nanos));
+			// A lost race here just means a slightly low max:
+			if(nanos > maxNanos) {
+				maxNanos = nanos;
+			}
+		}
+		
+		public Kind getKind() {
+			return kind;
+		}
+		
+		public String getId() {
+			return id;
+		}
+		
+		public long getCount() {
+			return count.sum();
+		}
+		
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+		
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+		
+		public double getMeanNanos() {
+			long n = getCount();
+			return n == 0 ? 0 : getTotalNanos() / (double) n;
+		}
+		
+		/**
+		 * Estimate a percentile from the histogram. The result is the upper 
+		 * bound of the bucket the percentile falls in, so it's accurate to
+		 * within a factor of two.
+		 * 
+		 * @param percentile	Between 0 and 100.
+		 * @return
+		 */
+		public long getPercentileNanos(double percentile) {
+			long[] counts = getHistogram();
+			long total = 0;
+			for(long c : counts) {
+				total += c;
+			}
+			if(total == 0) return 0;
+			long rank = (long) Math.ceil(total * percentile / 100.0);
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if(seen >= rank && counts[i] > 0) {
+					return Math.min(upperBound(i), maxNanos);
+				}
+			}
+			return maxNanos;
+		}
+		
+		/**
+		 * @return The count in each bucket, where bucket i holds latencies 
+		 * from 2^i to 2^(i+1) nanoseconds.
+		 */
+		public long[] getHistogram() {
+			long[] counts = new long[BUCKETS];
+			for(int i = 0; i < BUCKETS; i++) {
+				counts[i] = histogram.get(i);
+			}
+			return counts;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s %s: %d calls, total %.2f ms, mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us", 
+					kind, id, getCount(), getTotalNanos() / 1e6, getMeanNanos() / 1e3, 
+					getPercentileNanos(50) / 1e3, getPercentileNanos(99) / 1e3, getMaxNanos() / 1e3);
+		}
+	}
+	
+	private static final RuleProfiler instance = new RuleProfiler();
+	
+	public static RuleProfiler getInstance() {
+		return instance;
+	}
+	
+	static int bucket(long nanos) {
+		if(nanos <= 1) return 0;
+		return 63 - Long.numberOfLeadingZeros(nanos);
+	}
+	
+	static long upperBound(int bucket) {
+		return bucket >= 62 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+	}
+	
+	private volatile boolean enabled = false;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private Timer timer;
+	
+	private RuleProfiler() {}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Record how long a rule, validator or recalculation took. Does nothing 
+	 * if the profiler isn't enabled.
+	 * 
+	 * @param kind
+	 * @param id	The rule or validator id.
+	 * @param nanos
+	 */
+	public void record(Kind kind, String id, long nanos) {
+		if(!enabled) return;
+		String key = kind.name() + ":" + id;
+		Entry entry = entries.get(key);
+		if(entry == null) {
+			entry = entries.computeIfAbsent(key, k -> new Entry(kind, id));
+		}
+		entry.record(nanos);
+	}
+	
+	/**
+	 * Get the results so far, most expensive (by total time) first.
+	 * 
+	 * @return
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> list = new ArrayList<Entry>(entries.values());
+		Collections.sort(list, Comparator.comparingLong(Entry::getTotalNanos).reversed());
+		return list;
+	}
+	
+	/**
+	 * Get the results for one rule or validator.
+	 * 
+	 * @param kind
+	 * @param id
+	 * @return The entry, or null if nothing has been recorded for it.
+	 */
+	public Entry getEntry(Kind kind, String id) {
+		return entries.get(kind.name() + ":" + id);
+	}
+	
+	public void reset() {
+		entries.clear();
+	}
+	
+	/**
+	 * Write the results to the log.
+	 */
+	public void logResults() {
+		List<Entry> list = getEntries();
+		if(list.isEmpty()) return;
+		StringBuilder sb = new StringBuilder("Rule profile:");
+		for(Entry entry : list) {
+			sb.append("\n  ").append(entry);
+		}
+		logger.info(sb.toString());
+	}
+	
+	/**
+	 * Enable the profiler and write its results to the log periodically.
+	 * 
+	 * @param seconds	The period between dumps.
+	 */
+	public synchronized void startLogging(int seconds) {
+		setEnabled(true);
+		stopLogging();
+		timer = new Timer("RuleProfiler", true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				logResults();
+			}
+		}, seconds * 1000L, seconds * 1000L);
+	}
+	
+	public synchronized void stopLogging() {
+		if(timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+}
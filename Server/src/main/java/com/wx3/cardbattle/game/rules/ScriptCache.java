@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.game.RuleException;
+
+/**
+ * Holds the compiled form of {@link EntityRule} and {@link PlayValidator} 
+ * scripts, so a script is parsed once rather than every time it is 
+ * evaluated. Scripts are keyed by rule or validator id. 
+ * <p>
+ * The cache is normally populated when the datastore loads its cache, 
+ * but rules created in code are compiled the first time they're used.
+ * <p>
+ * If the engine keeps compiled scripts on disk, scripts are padded with a 
+ * trailing comment to the shortest length it will store.
+ * 
+ * @author Kevin
+ *
+ */
+public final class ScriptCache {
+	
+	final static Logger logger = LoggerFactory.getLogger(ScriptCache.class);
+	
+	/**
+	 * A compiled script along with the source it was compiled from, so 
+	 * we can tell if a rule with the same id has had its script changed.
+	 */
+	private static final class Entry {
+		
+		final String source;
+		final CompiledScript compiled;
+		
+		Entry(String source, CompiledScript compiled) {
+			this.source = source;
+			this.compiled = compiled;
+		}
+	}
+	
+	private final Compilable compiler;
+	private final int minLength;
+	
+	private final Map<String, Entry> ruleScripts = new ConcurrentHashMap<String, Entry>();
+	private final Map<String, Entry> validatorScripts = new ConcurrentHashMap<String, Entry>();
+	
+	/**
+	 * @param compiler
+	 * @param minLength	Pad shorter scripts to this length before compiling.
+	 */
+	public ScriptCache(Compilable compiler, int minLength) {
+		this.compiler = compiler;
+		this.minLength = minLength;
+	}
+	
+	/**
+	 * Compile the scripts for a collection of rules.
+	 * 
+	 * @param rules
+	 * @throws RuleException if a rule's script can't be compiled.
+	 */
+	public void compileRules(Collection<EntityRule> rules) {
+		long start = System.nanoTime();
+		for(EntityRule rule : rules) {
+			try {
+				getEntry(ruleScripts, rule.getId(), rule.getScript());
+			} catch (ScriptException ex) {
+				throw new RuleException("Unable to compile rule " + rule.getId() + ": " + ex.getMessage());
+			}
+		}
+		logger.info("Compiled " + rules.size() + " rule scripts in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+	
+	/**
+	 * Compile the scripts for a collection of validators.
+	 * 
+	 * @param validators
+	 * @throws RuleException if a validator's script can't be compiled.
+	 */
+	public void compileValidators(Collection<PlayValidator> validators) {
+		long start = System.nanoTime();
+		for(PlayValidator validator : validators) {
+			try {
+				getEntry(validatorScripts, validator.getId(), validator.getScript());
+			} catch (ScriptException ex) {
+				throw new RuleException("Unable to compile validator " + validator.getId() + ": " + ex.getMessage());
+			}
+		}
+		logger.info("Compiled " + validators.size() + " validator scripts in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+	
+	/**
+	 * Get the compiled script for a rule, compiling it if necessary.
+	 * 
+	 * @param rule
+	 * @return
+	 * @throws ScriptException
+	 */
+	public CompiledScript getRuleScript(EntityRule rule) throws ScriptException {
+		return getEntry(ruleScripts, rule.getId(), rule.getScript()).compiled;
+	}
+	
+	/**
+	 * Get the compiled script for a validator, compiling it if necessary.
+	 * 
+	 * @param validator
+	 * @return
+	 * @throws ScriptException
+	 */
+	public CompiledScript getValidatorScript(PlayValidator validator) throws ScriptException {
+		return getEntry(validatorScripts, validator.getId(), validator.getScript()).compiled;
+	}
+	
+	/**
+	 * Remove all compiled scripts.
+	 */
+	public void clear() {
+		ruleScripts.clear();
+		validatorScripts.clear();
+	}
+	
+	private Entry getEntry(Map<String, Entry> scripts, String id, String source) throws ScriptException {
+		Entry entry = scripts.get(id);
+		// The source check is just a reference comparison in the common case,
+		// since rules sharing an id are normally backed by the same object: 
+		if(entry == null || !entry.source.equals(source)) {
+			entry = compile(scripts, id, source);
+		}
+		return entry;
+	}
+	
+	// Games on different threads may miss on the same script at once, so 
+	// compilation is serialized and rechecks the cache first. Lookups of 
+	// already compiled scripts never need the lock.
+	private synchronized Entry compile(Map<String, Entry> scripts, String id, String source) throws ScriptException {
+		Entry entry = scripts.get(id);
+		if(entry == null || !entry.source.equals(source)) {
+			entry = new Entry(source, compiler.compile(pad(source)));
+			scripts.put(id, entry);
+		}
+		return entry;
+	}
+	
+	// Appended after the script, so line numbers in errors don't change:
+	private String pad(String source) {
+		if(source.length() >= minLength) return source;
+		StringBuilder padded = new StringBuilder(minLength).append(source).append("\n//");
+		while(padded.length() < minLength) {
+			padded.append(' ');
+		}
+		return padded.toString();
+	}
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.cardbattle.game.rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import jdk.nashorn.api.scripting.ClassFilter;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides games with the script engine, compiled scripts and script 
+ * contexts. 
+ * <p>
+ * We use a single script engine for performance (Nashorn seems to take up
+ * a couple 100k per engine instance), shared by every game on every thread. 
+ * This is safe because each game gets its own script context with its own 
+ * global object, and compiled scripts can be evaluated against any number 
+ * of globals concurrently. A game's context must only be used by one thread
+ * at a time, which GameInstance guarantees by synchronizing on the game.
+ * <p>
+ * Scripts are compiled once per run through the public {@link Compilable}
+ * API and kept in memory by the {@link ScriptCache}. Setting the 
+ * "scriptCacheDir" system property also keeps the compiled classes on disk 
+ * between runs, using Nashorn's persistent code cache: entries are keyed by
+ * a hash of the script, so a restarted server loads them instead of 
+ * compiling the scripts again. The directory is made private to the 
+ * server's user, since Nashorn loads the classes it finds there.
+ * 
+ * @author Kevin
+ *
+ */
+public final class ScriptEngineProvider {
+	
+	final static Logger logger = LoggerFactory.getLogger(ScriptEngineProvider.class);
+	
+	public static final String CACHE_DIRECTORY_PROPERTY = "scriptCacheDir";
+	
+	// Nashorn's code cache skips scripts shorter than this, which is all of
+	// ours, so we pad them (see ScriptCache):
+	private static final int CODE_CACHE_MIN_SIZE = 1000;
+	
+	// Compiled classes kept in memory per engine, enough for every rule and 
+	// validator script:
+	private static final int CLASS_CACHE_SIZE = 256;
+	
+	/**
+	 * Don't allow scripts to access general Java classes.
+	 *  
+	 * @author Kevin
+	 *
+	 */
+	static class RestrictiveFilter implements ClassFilter {
+
+		@Override
+		public boolean exposeToScripts(String s) {
+			return false;
+		}
+	}
+	
+	// Lazily create the provider the first time it's needed, relying on 
+	// class initialization to make that thread safe:
+	private static class Holder {
+		static final ScriptEngineProvider INSTANCE = new ScriptEngineProvider();
+	}
+	
+	public static ScriptEngineProvider getInstance() {
+		return Holder.INSTANCE;
+	}
+	
+	private final ScriptEngine engine;
+	private final ScriptCache scriptCache;
+	
+	private ScriptEngineProvider() {
+		NashornScriptEngineFactory factory = new NashornScriptEngineFactory(); 
+		File cacheDirectory = getCacheDirectory();
+		if(cacheDirectory != null) {
+			System.setProperty("nashorn.persistent.code.cache", cacheDirectory.getAbsolutePath());
+			String[] options = new String[]{"--persistent-code-cache", "--class-cache-size=" + CLASS_CACHE_SIZE};
+			engine = factory.getScriptEngine(options, ScriptEngineProvider.class.getClassLoader(), new RestrictiveFilter());
+		} else {
+			engine = factory.getScriptEngine(new RestrictiveFilter());
+		}
+		if(engine == null) {
+			throw new RuntimeException("Unable to get script engine");
+		}
+		scriptCache = new ScriptCache((Compilable) engine, cacheDirectory != null ? CODE_CACHE_MIN_SIZE : 0);
+	}
+	
+	// Get the code cache directory, creating it if needed, or null if there 
+	// isn't one or it can't be made private:
+	private static File getCacheDirectory() {
+		String path = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+		if(path == null) return null;
+		Path directory = new File(path).toPath();
+		try {
+			Files.createDirectories(directory);
+			Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+		} catch (IOException | UnsupportedOperationException ex) {
+			logger.warn("Not using script cache " + directory + ": " + ex);
+			return null;
+		}
+		logger.info("Using script cache in " + directory.toAbsolutePath());
+		return directory.toFile();
+	}
+	
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * Get the cache of compiled rule and validator scripts.
+	 * 
+	 * @return
+	 */
+	public ScriptCache getScriptCache() {
+		return scriptCache;
+	}
+	
+	/**
+	 * Create a new script context for a game, with its own global object. The 
+	 * game is available to scripts as "rules", and its methods are bound to the 
+	 * global object so they can be called without needing to preface every one
+	 * with an object reference, e.g.: "endTurn()" instead of "rules.endTurn()".
+	 * 
+	 * @param game
+	 * @return
+	 */
+	public ScriptContext createContext(Object game) {
+		ScriptContext context = new SimpleScriptContext();
+		context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+		Bindings scope = context.getBindings(ScriptContext.ENGINE_SCOPE);
+		scope.put("rules", game);
+		try {
+			Object global = engine.eval("this", context);
+			Object jsObject = engine.eval("Object", context);
+			((Invocable) engine).invokeMethod(jsObject, "bindProperties", global, game);
+		} catch (ScriptException | NoSuchMethodException ex) {
+			throw new RuntimeException("Unable to bind game to script context", ex);
+		}
+		return context;
+	}
+
+}
@@ -23,7 +23,9 @@
  *******************************************************************************/
 package com.wx3.cardbattle.server;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -34,6 +36,7 @@ import com.wx3.cardbattle.datastore.AuthenticationException;
 import com.wx3.cardbattle.datastore.GameDatastore;
 import com.wx3.cardbattle.datastore.GameRecord;
 import com.wx3.cardbattle.datastore.PlayerAuthtoken;
+import com.wx3.cardbattle.game.CommandJournal;
 import com.wx3.cardbattle.game.GameEntity;
 import com.wx3.cardbattle.game.GameInstance;
 import com.wx3.cardbattle.game.GamePlayer;
@@ -70,17 +73,67 @@ public abstract class GameServer {
 	public GameInstance<? extends GameEntity> newGame(User user1, User user2) {
 		logger.info("Creating game for " + user1 + " and " + user2);
 		GameRecord gameRecord = datastore.newGameRecord();
+		// Ids come from the datastore, which may have been reset since a 
+		// recovered game was created:
+		if(gameInstances.containsKey(gameRecord.getGameId())) {
+			throw new RuntimeException("Game " + gameRecord.getGameId() + " already exists");
+		}
 		GameInstance<? extends GameEntity>  game = createGame(gameRecord.getGameId());
 		GamePlayer p1 = new GamePlayer(user1);
 		game.addPlayer(p1);
 		GamePlayer p2 = new GamePlayer(user2);
 		game.addPlayer(p2);
-		datastore.newAuthToken(p1, gameRecord);
-		datastore.newAuthToken(p2, gameRecord);
+		// Kept on the players so the journal can restore them:
+		p1.setAuthtoken(datastore.newAuthToken(p1, gameRecord).getAuthtoken());
+		p2.setAuthtoken(datastore.newAuthToken(p2, gameRecord).getAuthtoken());
 		gameInstances.put(game.getId(), game);
 		return game;
 	}
 	
+	/**
+	 * Rebuild the games that have journals, e.g. after a crash. Games that 
+	 * were already over aren't kept, and their journals are deleted. 
+	 * Each unfinished game's players get their auth tokens back, in case the
+	 * datastore lost them, and the game is passed to {@link #gameRecovered}.
+	 * New games get ids above every journaled game's.
+	 */
+	public void recoverGames() {
+		File root = GameInstance.getJournalDirectory();
+		if(root == null) return;
+		List<Long> ids = CommandJournal.findGames(root);
+		if(ids.isEmpty()) return;
+		datastore.reserveGameIds(ids.get(ids.size() - 1));
+		for(long id : ids) {
+			try {
+				GameInstance<? extends GameEntity> game = createGame(id);
+				game.recover();
+				if(game.isGameOver()) {
+					game.getJournal().delete();
+				} else {
+					for(GamePlayer player : game.getPlayers()) {
+						if(player.getAuthtoken() != null) {
+							datastore.restoreAuthToken(player, id, player.getAuthtoken());
+						}
+					}
+					gameInstances.put(game.getId(), game);
+					gameRecovered(game);
+				}
+			} catch (RuntimeException ex) {
+				logger.error("Failed to recover game " + id, ex);
+			}
+		}
+		logger.info("Recovered " + gameInstances.size() + " games");
+	}
+	
+	/**
+	 * Called when an unfinished game has been recovered from its journal. 
+	 * Subclasses should reconnect anything that was connected to the game 
+	 * when it was created, like AI players, since nothing else will.
+	 * 
+	 * @param game
+	 */
+	protected void gameRecovered(GameInstance<? extends GameEntity> game) {}
+	
 	public GameInstance<? extends GameEntity> getGame(long id) {
 		if(!gameInstances.containsKey(id)) return null;
 		return gameInstances.get(id);
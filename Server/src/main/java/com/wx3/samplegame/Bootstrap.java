@@ -42,7 +42,9 @@ import org.slf4j.LoggerFactory;
 import com.wx3.cardbattle.datastore.GameDatastore;
 import com.wx3.cardbattle.game.EntityPrototype;
 import com.wx3.cardbattle.game.User;
+import com.wx3.cardbattle.game.gameevents.EventTypes;
 import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.cardbattle.game.rules.NativeActions;
 import com.wx3.cardbattle.game.rules.PlayValidator;
 
 /**
@@ -105,6 +107,7 @@ public class Bootstrap {
 	}
 	
 	private void importRules(String path) throws IOException {
+		SampleRuleActions.register();
 		Reader reader = new FileReader(path);
 		CSVParser parser = new CSVParser(reader, CSVFormat.EXCEL.withHeader());
 		for(CSVRecord record : parser) {
@@ -112,7 +115,21 @@ public class Bootstrap {
 			String description = record.get("description");
 			String trigger = record.get("trigger");
 			String script = record.get("script");
+			// A rule with a misspelled trigger would never fire:
+			if(!trigger.isEmpty() && !EventTypes.isKnown(trigger)) {
+				throw new RuntimeException("Rule '" + id + "' has unknown trigger '" + trigger + "'");
+			}
 			EntityRule rule = EntityRule.createRule(trigger, script, id, description);
+			// Rules can declare a native action directly, otherwise use one if 
+			// the script is a simple call to a known game method:
+			String action = record.isMapped("action") ? record.get("action") : null;
+			if(action == null || action.isEmpty()) {
+				action = NativeActions.translate(script);
+			}
+			if(action != null && !action.isEmpty()) {
+				rule.setNativeAction(action);
+				logger.info("Rule " + id + " uses native action '" + action + "'");
+			}
 			datastore.createRule(rule);
 			ruleCache.put(id, rule);
 		}
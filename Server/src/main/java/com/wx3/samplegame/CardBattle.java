@@ -24,8 +24,14 @@
 
 package com.wx3.samplegame;
 
+import java.io.File;
+
 import com.wx3.cardbattle.datastore.GameDatastore;
 import com.wx3.cardbattle.datastore.HibernateDatastore;
+import com.wx3.cardbattle.game.CommandBudget;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.rules.RuleEngines;
+import com.wx3.cardbattle.game.rules.RuleProfiler;
 import com.wx3.cardbattle.networking.NettyWebSocketServer;
 import com.wx3.cardbattle.server.GameServer;
 
@@ -39,13 +45,44 @@ public class CardBattle
 {
 	static final boolean SSL = System.getProperty("ssl") != null;
     static final int PORT = Integer.parseInt(System.getProperty("port", SSL? "8443" : "8080"));
+    static final String RULE_ENGINE = System.getProperty("ruleEngine", RuleEngines.NATIVE);
+    static final int MAX_COMMAND_EVENTS = Integer.parseInt(System.getProperty("maxCommandEvents", 
+    		String.valueOf(CommandBudget.DEFAULT_MAX_EVENTS)));
+    static final long MAX_COMMAND_MILLIS = Long.parseLong(System.getProperty("maxCommandMillis", "0"));
+    static final boolean PROFILE_RULES = System.getProperty("profileRules") != null;
+    static final int PROFILE_LOG_SECONDS = Integer.parseInt(System.getProperty("profileLogSeconds", "60"));
+    static final int WARMUP_GAMES = Integer.parseInt(System.getProperty("warmupGames", "0"));
+    static final int EVENT_HISTORY_WINDOW = Integer.parseInt(System.getProperty("eventHistoryWindow", "1000"));
+    static final String EVENT_HISTORY_DIR = System.getProperty("eventHistoryDir", System.getProperty("java.io.tmpdir"));
+    static final boolean TRACE_COMMANDS = System.getProperty("traceCommands") != null;
+    static final long SLOW_COMMAND_MILLIS = Long.parseLong(System.getProperty("slowCommandMillis", "0"));
+    static final String JOURNAL_DIR = System.getProperty("journalDir");
+    static final boolean ENTITY_COLUMNS = System.getProperty("entityColumns") != null;
     
     public static void main( String[] args )
     {
+    	GameInstance.setDefaultRuleEngine(RuleEngines.create(RULE_ENGINE));
+    	GameInstance.setDefaultCommandBudget(new CommandBudget(MAX_COMMAND_EVENTS, MAX_COMMAND_MILLIS));
+    	GameInstance.setDefaultEventHistoryWindow(EVENT_HISTORY_WINDOW);
+    	GameInstance.setEventHistoryDirectory(new File(EVENT_HISTORY_DIR));
+    	GameInstance.setDefaultCommandTracing(TRACE_COMMANDS);
+    	GameInstance.setSlowCommandMillis(SLOW_COMMAND_MILLIS);
+    	GameInstance.setDefaultEntityColumns(ENTITY_COLUMNS);
+    	if(JOURNAL_DIR != null) {
+    		GameInstance.setJournalDirectory(new File(JOURNAL_DIR));
+    	}
+    	if(PROFILE_RULES) {
+    		RuleProfiler.getInstance().startLogging(PROFILE_LOG_SECONDS);
+    	}
+    	
     	GameDatastore datastore = new HibernateDatastore();
     	bootstrap(datastore);
+    	if(WARMUP_GAMES > 0) {
+    		new RuleWarmup(datastore).run(WARMUP_GAMES);
+    	}
     	
     	GameServer gameserver = new SampleGameServer(datastore);
+    	gameserver.recoverGames();
     	gameserver.start();
     	
     	NettyWebSocketServer nettyServer = new NettyWebSocketServer(gameserver, PORT);
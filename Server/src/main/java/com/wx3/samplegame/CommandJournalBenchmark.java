@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.datastore.HibernateDatastore;
+import com.wx3.cardbattle.game.CommandJournal;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.commands.GameCommand;
+
+/**
+ * Benchmark and check for the {@link CommandJournal}. Plays pairs of 
+ * {@link SimulatedMatch}es with the same seed, one journaled and one not, 
+ * performing the same commands in both, and reports the latency of each 
+ * command with and without the journal. Then it rebuilds every journaled 
+ * game from its journal and checks it matches the original.
+ * <p>
+ * Takes optional arguments for the number of games (default 100) and the 
+ * directory to write journals in (default: a new temporary directory). 
+ * Exits with a non-zero status if any recovered game differs.
+ * 
+ * @author Kevin
+ *
+ */
+public class CommandJournalBenchmark {
+	
+	final static Logger logger = LoggerFactory.getLogger(CommandJournalBenchmark.class);
+
+	public static void main(String[] args) throws Exception {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		File directory = args.length > 1 ? new File(args[1]) : 
+			new File(System.getProperty("java.io.tmpdir"), "journal-benchmark-" + System.currentTimeMillis());
+		
+		GameDatastore datastore = new HibernateDatastore();
+		Bootstrap bootstrap = new Bootstrap(datastore);
+		bootstrap.importData("csv");
+		
+		List<Long> plainTimes = new ArrayList<Long>();
+		List<Long> journaledTimes = new ArrayList<Long>();
+		List<SimulatedMatch> journaledMatches = new ArrayList<SimulatedMatch>();
+		// Finished games are recovered below too, so keep their journals:
+		GameInstance.setKeepFinishedJournals(true);
+		for(int i = 0; i < games; i++) {
+			GameInstance.setJournalDirectory(null);
+			SimulatedMatch plain = new SimulatedMatch(datastore, i);
+			GameInstance.setJournalDirectory(directory);
+			SimulatedMatch journaled = new SimulatedMatch(datastore, i);
+			while(!plain.isFinished() && !journaled.isFinished()) {
+				// Both matches choose the same command, since they have the same seed:
+				GameCommand<?> plainCommand = plain.chooseCommand(plain.getGame().getCurrentPlayer());
+				GameCommand<?> journaledCommand = journaled.chooseCommand(journaled.getGame().getCurrentPlayer());
+				// Take turns going first, so neither gets the benefit of a warm cache:
+				if(plainTimes.size() % 2 == 0) {
+					plainTimes.add(time(plain, plainCommand));
+					journaledTimes.add(time(journaled, journaledCommand));
+				} else {
+					journaledTimes.add(time(journaled, journaledCommand));
+					plainTimes.add(time(plain, plainCommand));
+				}
+			}
+			journaledMatches.add(journaled);
+		}
+		report("plain", plainTimes);
+		report("journaled", journaledTimes);
+		
+		for(SimulatedMatch match : journaledMatches) {
+			match.getGame().getJournal().close();
+		}
+		CommandJournal.flushAll();
+		long records = 0;
+		for(SimulatedMatch match : journaledMatches) {
+			records += match.getGame().getJournal().getCommittedCount();
+		}
+		logger.info("Wrote " + records + " records, " + size(directory) + " bytes used in " + directory);
+		
+		int mismatches = 0;
+		long start = System.nanoTime();
+		for(SimulatedMatch match : journaledMatches) {
+			SampleGameInstance original = match.getGame();
+			SampleGameInstance recovered = new SampleGameInstance(datastore, original.getId());
+			recovered.addGlobalRules();
+			recovered.recover();
+			recovered.getJournal().close();
+			if(recovered.getTurn() != original.getTurn() || 
+					!SimulatedMatch.describeEntities(recovered).equals(SimulatedMatch.describeEntities(original))) {
+				logger.error("Game " + original.getId() + " differs after recovery");
+				++mismatches;
+			}
+		}
+		logger.info(String.format("Recovered %d games in %.1f ms", games, (System.nanoTime() - start) / 1e6));
+		if(mismatches > 0) {
+			logger.error(mismatches + " of " + games + " games differ");
+			System.exit(1);
+		}
+		logger.info("All " + games + " recovered games matched");
+		System.exit(0);
+	}
+	
+	private static long time(SimulatedMatch match, GameCommand<?> command) {
+		long start = System.nanoTime();
+		match.perform(command);
+		return System.nanoTime() - start;
+	}
+	
+	// The bytes actually written to the segment files, which are mostly empty:
+	private static long size(File directory) {
+		long size = 0;
+		for(long id : CommandJournal.findGames(directory)) {
+			for(CommandJournal.Entry entry : CommandJournal.read(directory, id)) {
+				size += entry.toString().length() + 8;
+			}
+		}
+		return size;
+	}
+	
+	private static void report(String name, List<Long> times) {
+		long[] latencies = new long[times.size()];
+		long total = 0;
+		for(int i = 0; i < latencies.length; i++) {
+			latencies[i] = times.get(i);
+			total += latencies[i];
+		}
+		Arrays.sort(latencies);
+		int count = latencies.length;
+		logger.info(String.format("%-10s %d commands: mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us", 
+				name, count, total / 1e3 / count, latencies[count / 2] / 1e3, latencies[count * 99 / 100] / 1e3, 
+				latencies[count * 999 / 1000] / 1e3, latencies[count - 1] / 1e3));
+	}
+
+}
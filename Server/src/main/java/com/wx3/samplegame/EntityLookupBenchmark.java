@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Microbenchmark for looking up entities by id on boards of 10, 100 and 
+ * 1000 entities, comparing the game's id index against a scan over the 
+ * entity list (which is what GameInstance.getEntity used to do). Reports 
+ * the time and allocation per lookup. 
+ * <p>
+ * Doesn't need a datastore, so it can be run directly.
+ * 
+ * @author Kevin
+ *
+ */
+public class EntityLookupBenchmark {
+	
+	final static Logger logger = LoggerFactory.getLogger(EntityLookupBenchmark.class);
+	
+	private static final int LOOKUPS = 1000000;
+	private static final int ROUNDS = 5;
+	
+	private static final com.sun.management.ThreadMXBean threadBean = 
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	/**
+	 * A way of looking up an entity.
+	 */
+	interface Lookup {
+		SampleEntity get(SampleGameInstance game, List<SampleEntity> entities, int id);
+	}
+
+	public static void main(String[] args) {
+		Lookup indexed = (game, entities, id) -> game.getEntity(id);
+		Lookup scanned = (game, entities, id) -> 
+			entities.stream().filter(e -> e.getId() == id).findFirst().orElse(null);
+		for(int size : new int[]{10, 100, 1000}) {
+			SampleGameInstance game = new SampleGameInstance(null, 0);
+			for(int i = 0; i < size; i++) {
+				game.spawnEntity();
+			}
+			List<SampleEntity> entities = game.getEntities();
+			// Look up a random mix of ids, including a few that don't exist:
+			Random random = new Random(size);
+			int[] ids = new int[1024];
+			for(int i = 0; i < ids.length; i++) {
+				ids[i] = random.nextInt(size + size / 10 + 1);
+			}
+			// Scanning a big board is slow, so it gets fewer lookups:
+			int scans = LOOKUPS / Math.max(1, size / 10);
+			run(indexed, game, entities, ids, LOOKUPS);
+			run(scanned, game, entities, ids, scans);
+			double[] index = run(indexed, game, entities, ids, LOOKUPS);
+			double[] scan = run(scanned, game, entities, ids, scans);
+			logger.info(String.format("%4d entities: index %.1f ns, %.1f bytes/lookup; scan %.1f ns, %.1f bytes/lookup", 
+					size, index[0], index[1], scan[0], scan[1]));
+		}
+	}
+	
+	/**
+	 * Run a number of lookups several times and return the best mean time per
+	 * lookup in nanoseconds, and the bytes allocated per lookup.
+	 */
+	private static double[] run(Lookup lookup, SampleGameInstance game, List<SampleEntity> entities, 
+			int[] ids, int lookups) {
+		long threadId = Thread.currentThread().getId();
+		double best = Double.MAX_VALUE;
+		long allocated = 0;
+		int found = 0;
+		for(int round = 0; round < ROUNDS; round++) {
+			long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for(int i = 0; i < lookups; i++) {
+				if(lookup.get(game, entities, ids[i & (ids.length - 1)]) != null) {
+					++found;
+				}
+			}
+			best = Math.min(best, (System.nanoTime() - start) / (double) lookups);
+			allocated += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		}
+		// Use the result, so the lookups can't be optimized away:
+		if(found < 0) {
+			logger.info("Found " + found);
+		}
+		return new double[]{best, allocated / (double) lookups / ROUNDS};
+	}
+
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.GamePlayer;
+import com.wx3.cardbattle.game.User;
+
+/**
+ * Microbenchmark for the entity queries the AI runs for every candidate 
+ * move (a player's hand, minions, enemies and player entity), on boards of
+ * 10, 100 and 1000 tokens, with and without entity columns. Checks both 
+ * give the same results, and reports the time and allocation per round of
+ * queries. 
+ * <p>
+ * Doesn't need a datastore, so it can be run directly.
+ * 
+ * @author Kevin
+ *
+ */
+public class EntityQueryBenchmark {
+	
+	final static Logger logger = LoggerFactory.getLogger(EntityQueryBenchmark.class);
+	
+	private static final int QUERIES = 20000000;
+	private static final int ROUNDS = 5;
+	
+	private static final com.sun.management.ThreadMXBean threadBean = 
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		GamePlayer[] players = new GamePlayer[]{new GamePlayer(new User("player1")), new GamePlayer(new User("player2"))};
+		for(int size : new int[]{10, 100, 1000}) {
+			SampleGameInstance streamed = createBoard(players, size);
+			SampleGameInstance columnar = createBoard(players, size);
+			columnar.setEntityColumns(true);
+			for(GamePlayer player : players) {
+				if(!describe(streamed, player).equals(describe(columnar, player))) {
+					throw new RuntimeException("Columnar queries don't match on a board of " + size);
+				}
+			}
+			// Each round is 8 queries, so keep the total number of entities 
+			// looked at about the same for each board size:
+			int rounds = QUERIES / size / 8;
+			run(streamed, players, rounds);
+			run(columnar, players, rounds);
+			double[] stream = run(streamed, players, rounds);
+			double[] column = run(columnar, players, rounds);
+			logger.info(String.format("%4d entities: streams %.1f ns, %.1f bytes/round; columns %.1f ns, %.1f bytes/round", 
+					size, stream[0], stream[1], column[0], column[1]));
+		}
+	}
+	
+	/**
+	 * Create a game with the rule entity, the players' entities and a number 
+	 * of tokens, a third of them in hand and the rest minions in play.
+	 */
+	private static SampleGameInstance createBoard(GamePlayer[] players, int tokens) {
+		SampleGameInstance game = new SampleGameInstance(null, 0);
+		SampleEntity rules = game.spawnEntity();
+		rules.setTag(GameInstance.RULES);
+		rules.setTag(GameInstance.IN_PLAY);
+		for(GamePlayer player : players) {
+			SampleEntity entity = game.spawnEntity();
+			entity.setOwner(player.getPlayerName());
+			entity.setTag(GameInstance.PLAYER);
+			entity.setTag(GameInstance.IN_PLAY);
+		}
+		for(int i = 0; i < tokens; i++) {
+			SampleEntity token = game.spawnEntity();
+			token.setOwner(players[i % players.length].getPlayerName());
+			if(i % 3 == 0) {
+				token.setTag(SampleGameInstance.IN_HAND);
+			} else {
+				token.setTag(SampleGameInstance.MINION);
+				token.setTag(GameInstance.IN_PLAY);
+			}
+		}
+		return game;
+	}
+	
+	private static String describe(SampleGameInstance game, GamePlayer player) {
+		String name = player.getPlayerName();
+		return game.getPlayerHand(player) + " " + game.getPlayerMinions(name) + " " + 
+				game.getEnemyEntities(name) + " " + game.getPlayerEntity(name);
+	}
+	
+	/**
+	 * Run rounds of queries for each player several times and return the best
+	 * mean time per round in nanoseconds, and the bytes allocated per round.
+	 */
+	private static double[] run(SampleGameInstance game, GamePlayer[] players, int rounds) {
+		long threadId = Thread.currentThread().getId();
+		double best = Double.MAX_VALUE;
+		long allocated = 0;
+		int found = 0;
+		for(int round = 0; round < ROUNDS; round++) {
+			long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for(int i = 0; i < rounds; i++) {
+				for(GamePlayer player : players) {
+					String name = player.getPlayerName();
+					List<SampleEntity> hand = game.getPlayerHand(player);
+					List<SampleEntity> minions = game.getPlayerMinions(name);
+					List<SampleEntity> enemies = game.getEnemyEntities(name);
+					found += hand.size() + minions.size() + enemies.size();
+					if(game.getPlayerEntity(name) != null) {
+						++found;
+					}
+				}
+			}
+			best = Math.min(best, (System.nanoTime() - start) / (double) rounds);
+			allocated += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		}
+		// Use the result, so the queries can't be optimized away:
+		if(found < 0) {
+			logger.info("Found " + found);
+		}
+		return new double[]{best, allocated / (double) rounds / ROUNDS};
+	}
+
+}
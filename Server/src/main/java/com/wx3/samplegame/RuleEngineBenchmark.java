@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.datastore.HibernateDatastore;
+import com.wx3.cardbattle.game.EntityPrototype;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.commands.GameCommand;
+import com.wx3.cardbattle.game.rules.PlayValidator;
+import com.wx3.cardbattle.game.rules.RuleEngine;
+import com.wx3.cardbattle.game.rules.RuleEngines;
+import com.wx3.samplegame.commands.AttackCommand;
+import com.wx3.samplegame.commands.EndTurnCommand;
+import com.wx3.samplegame.commands.PlayCardCommand;
+
+/**
+ * Benchmark comparing {@link RuleEngine} backends. Records a set of seeded 
+ * {@link SimulatedMatch}es, then replays exactly the same commands through 
+ * each backend and reports the latency and allocation per command. Every 
+ * backend should also produce the same final game states.
+ * <p>
+ * Takes optional arguments for the number of games (default 50) and the 
+ * number of measured replays per backend (default 3).
+ * 
+ * @author Kevin
+ *
+ */
+public class RuleEngineBenchmark {
+	
+	final static Logger logger = LoggerFactory.getLogger(RuleEngineBenchmark.class);
+	
+	/**
+	 * The commands played in a match, which can be recreated for a replay.
+	 */
+	static class Recording {
+		
+		final long seed;
+		final List<int[]> moves = new ArrayList<int[]>();
+		
+		Recording(long seed) {
+			this.seed = seed;
+		}
+		
+		void add(GameCommand<?> command) {
+			if(command instanceof PlayCardCommand) {
+				PlayCardCommand play = (PlayCardCommand) command;
+				moves.add(new int[]{PLAY, play.getEntityId(), play.getTargetId()});
+			} else if(command instanceof AttackCommand) {
+				AttackCommand attack = (AttackCommand) command;
+				moves.add(new int[]{ATTACK, attack.getAttackerId(), attack.getTargetId()});
+			} else {
+				moves.add(new int[]{END_TURN, 0, 0});
+			}
+		}
+		
+		GameCommand<?> create(int[] move) {
+			switch(move[0]) {
+				case PLAY : return new PlayCardCommand(move[1], move[2]);
+				case ATTACK : return new AttackCommand(move[1], move[2]);
+				default : return new EndTurnCommand();
+			}
+		}
+	}
+	
+	private static final int PLAY = 0;
+	private static final int ATTACK = 1;
+	private static final int END_TURN = 2;
+	
+	private static final com.sun.management.ThreadMXBean threadBean = 
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int replays = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		
+		GameDatastore datastore = new HibernateDatastore();
+		Bootstrap bootstrap = new Bootstrap(datastore);
+		bootstrap.importData("csv");
+		
+		List<Recording> recordings = new ArrayList<Recording>();
+		for(int i = 0; i < games; i++) {
+			Recording recording = new Recording(i);
+			SimulatedMatch match = new SimulatedMatch(datastore, i);
+			while(!match.isFinished()) {
+				recording.add(match.step());
+			}
+			recordings.add(recording);
+		}
+		
+		List<String> expected = null;
+		for(String name : new String[]{RuleEngines.NASHORN, RuleEngines.NATIVE}) {
+			RuleEngine engine = RuleEngines.create(name);
+			compile(engine, datastore);
+			GameInstance.setDefaultRuleEngine(engine);
+			// The first replay is warm-up:
+			List<String> states = replay(datastore, recordings, null, new long[1]);
+			long[] latencies = new long[0];
+			long allocated = 0;
+			for(int i = 0; i < replays; i++) {
+				long[] allocation = new long[1];
+				List<Long> times = new ArrayList<Long>();
+				replay(datastore, recordings, times, allocation);
+				latencies = append(latencies, times);
+				allocated += allocation[0];
+			}
+			report(name, latencies, allocated);
+			if(expected == null) {
+				expected = states;
+			} else if(!expected.equals(states)) {
+				logger.warn("Final states from " + name + " differ from " + RuleEngines.NASHORN);
+			}
+		}
+		System.exit(0);
+	}
+	
+	private static void compile(RuleEngine engine, GameDatastore datastore) {
+		engine.compileRules(datastore.getRules());
+		Set<PlayValidator> validators = new HashSet<PlayValidator>();
+		for(EntityPrototype card : datastore.getCards()) {
+			if(card.getValidator() != null) {
+				validators.add(card.getValidator());
+			}
+		}
+		engine.compileValidators(validators);
+	}
+	
+	/**
+	 * Replay the recordings, adding the time each command took to times (if 
+	 * not null) and the bytes allocated by the commands to allocation[0].
+	 * 
+	 * @return The final state of each game.
+	 */
+	private static List<String> replay(GameDatastore datastore, List<Recording> recordings, 
+			List<Long> times, long[] allocation) {
+		long threadId = Thread.currentThread().getId();
+		List<String> states = new ArrayList<String>();
+		for(Recording recording : recordings) {
+			SimulatedMatch match = new SimulatedMatch(datastore, recording.seed);
+			for(int[] move : recording.moves) {
+				GameCommand<?> command = recording.create(move);
+				long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+				long start = System.nanoTime();
+				match.perform(command);
+				long elapsed = System.nanoTime() - start;
+				allocation[0] += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+				if(times != null) {
+					times.add(elapsed);
+				}
+			}
+			states.add(match.describeState());
+		}
+		return states;
+	}
+	
+	private static long[] append(long[] array, List<Long> values) {
+		long[] result = Arrays.copyOf(array, array.length + values.size());
+		for(int i = 0; i < values.size(); i++) {
+			result[array.length + i] = values.get(i);
+		}
+		return result;
+	}
+	
+	private static void report(String name, long[] latencies, long allocated) {
+		Arrays.sort(latencies);
+		long total = 0;
+		for(long latency : latencies) {
+			total += latency;
+		}
+		int count = latencies.length;
+		logger.info(String.format("%-8s %d commands: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us, %d bytes/command", 
+				name, count, total / 1e3 / count, latencies[count / 2] / 1e3, latencies[count * 99 / 100] / 1e3, 
+				latencies[count - 1] / 1e3, allocated / count));
+	}
+
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.game.EntityPrototype;
+import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.cardbattle.game.rules.PlayValidator;
+import com.wx3.cardbattle.game.rules.RuleProfiler;
+
+/**
+ * Warms up the rule engine and the JIT before a server starts accepting 
+ * players, so the first games after a deploy aren't slower than the rest. 
+ * <p>
+ * The warm-up plays a number of {@link SimulatedMatch}es, whose decks hold 
+ * every card, so every card's rules fire and every validator is checked 
+ * against the board many times. A probe match is timed before and after 
+ * so we can see what the warm-up bought. Rules and validators that never
+ * ran during the warm-up are logged, since they'll still be cold.
+ * 
+ * @author Kevin
+ *
+ */
+public class RuleWarmup {
+	
+	final static Logger logger = LoggerFactory.getLogger(RuleWarmup.class);
+	
+	// Seed for the timed probe match, distinct from the warm-up matches:
+	private static final long PROBE_SEED = -1;
+	
+	private final GameDatastore datastore;
+	
+	public RuleWarmup(GameDatastore datastore) {
+		this.datastore = datastore;
+	}
+	
+	/**
+	 * Play the warm-up matches. The datastore's cache must already be loaded.
+	 * 
+	 * @param games		The number of matches to play.
+	 */
+	public void run(int games) {
+		logger.info("Warming up rules with " + games + " games");
+		long start = System.nanoTime();
+		
+		// Use the profiler to see which rules ran, leaving it as we found it:
+		RuleProfiler profiler = RuleProfiler.getInstance();
+		boolean profiling = profiler.isEnabled();
+		profiler.reset();
+		profiler.setEnabled(true);
+		double before, after;
+		try {
+			before = probe();
+			for(int i = 0; i < games; i++) {
+				new SimulatedMatch(datastore, i).play();
+			}
+			after = probe();
+			logCoverage(profiler);
+		} finally {
+			profiler.setEnabled(profiling);
+			profiler.reset();
+		}
+		
+		logger.info(String.format("Warm-up took %d ms", (System.nanoTime() - start) / 1000000));
+		logger.info(String.format("Mean command latency before warm-up: %.1f us, after: %.1f us", 
+				before / 1e3, after / 1e3));
+	}
+	
+	/**
+	 * Play the probe match and return the mean time per command in nanoseconds.
+	 */
+	private double probe() {
+		SimulatedMatch match = new SimulatedMatch(datastore, PROBE_SEED);
+		long start = System.nanoTime();
+		match.play();
+		return (System.nanoTime() - start) / (double) Math.max(1, match.getCommandCount());
+	}
+	
+	private void logCoverage(RuleProfiler profiler) {
+		List<String> cold = new ArrayList<String>();
+		for(EntityRule rule : datastore.getRules()) {
+			if(profiler.getEntry(RuleProfiler.Kind.RULE, rule.getId()) == null && 
+					profiler.getEntry(RuleProfiler.Kind.BUFF, rule.getId()) == null) {
+				cold.add(rule.getId());
+			}
+		}
+		Set<PlayValidator> validators = new LinkedHashSet<PlayValidator>();
+		for(EntityPrototype card : datastore.getCards()) {
+			if(card.getValidator() != null) {
+				validators.add(card.getValidator());
+			}
+		}
+		for(PlayValidator validator : validators) {
+			if(profiler.getEntry(RuleProfiler.Kind.VALIDATOR, validator.getId()) == null) {
+				cold.add(validator.getId());
+			}
+		}
+		if(!cold.isEmpty()) {
+			logger.warn("Rules and validators not run during warm-up: " + cold);
+		}
+	}
+
+}
@@ -29,6 +29,7 @@ package com.wx3.samplegame;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 import com.wx3.cardbattle.game.EntityPrototype;
 import com.wx3.cardbattle.game.GameEntity;
@@ -56,7 +57,7 @@ public class SampleEntity extends GameEntity {
 	 * @return
 	 */
 	public int getCost() {
-		return getStat(SampleGameInstance.COST);
+		return getStat(Stats.COST.getId());
 	}
 	
 	/**
@@ -66,47 +67,47 @@ public class SampleEntity extends GameEntity {
 	 * @return
 	 */
 	public int getEnergy() {
-		return getStat(SampleGameInstance.ENERGY_PER_TURN) - getVar(SampleGameInstance.ENERGY_SPENT);
+		return getStat(Stats.ENERGY_PER_TURN.getId()) - getVar(Vars.ENERGY_SPENT.getId());
 	}
 	
 	public void useEnergy(int amount) {
-		setVar(SampleGameInstance.ENERGY_SPENT, amount);
+		setVar(Vars.ENERGY_SPENT.getId(), amount);
 	}
 	
 	public int getCurrentHealth() {
-		return getVar(SampleGameInstance.CURRENT_HEALTH);
+		return getVar(Vars.CURRENT_HEALTH.getId());
 	}
 	
 	void setCurrentHealth(int health) {
-		setVar(SampleGameInstance.CURRENT_HEALTH, health);
+		setVar(Vars.CURRENT_HEALTH.getId(), health);
 	}
 	
 	public int getMaxHealth() {
-		return getStat(SampleGameInstance.MAX_HEALTH);
+		return getStat(Stats.MAX_HEALTH.getId());
 	}
 	
 	public void resetAttacks() {
-		setVar(SampleGameInstance.ATTACKS_REMAINING, getAttacksPerTurn());
+		setVar(Vars.ATTACKS_REMAINING.getId(), getAttacksPerTurn());
 	}
 	
 	public int getAttacksPerTurn() {
-		return getStat(SampleGameInstance.ATTACKS_PER_TURN);
+		return getStat(Stats.ATTACKS_PER_TURN.getId());
 	}
 	
 	public int getAttacksRemaining() {
-		return getVar(SampleGameInstance.ATTACKS_REMAINING);
+		return getVar(Vars.ATTACKS_REMAINING.getId());
 	}
 	
 	public void setAttacksRemaining(int val) {
-		setVar(SampleGameInstance.ATTACKS_REMAINING, val);
+		setVar(Vars.ATTACKS_REMAINING.getId(), val);
 	}
 	
 	public boolean isInHand() {
-		return hasTag(SampleGameInstance.IN_HAND);
+		return hasTag(SampleGameInstance.IN_HAND_TAG);
 	}
 	
 	public boolean isMinion() {
-		return hasTag(SampleGameInstance.MINION);
+		return hasTag(SampleGameInstance.MINION_TAG);
 	}
 	
 	/**
@@ -135,8 +136,9 @@ public class SampleEntity extends GameEntity {
 			view.tags.add(SampleGameInstance.IN_HAND);
 		} else {
 			view.tags = new HashSet<String>(getTags());
-			view.stats = getCurrentStats();
-			view.vars = getCurrentVars();
+			// Copied, since the view is serialized outside the game's lock:
+			view.stats = new LinkedHashMap<String, Integer>(getCurrentStats());
+			view.vars = new LinkedHashMap<String, Integer>(getCurrentVars());
 		}
 		return view;
 	}
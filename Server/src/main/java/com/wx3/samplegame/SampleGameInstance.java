@@ -33,21 +33,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import javax.script.ScriptException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonElement;
+
 import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.game.EntityColumns;
 import com.wx3.cardbattle.game.EntityPrototype;
 import com.wx3.cardbattle.game.GameEntity;
 import com.wx3.cardbattle.game.GameInstance;
 import com.wx3.cardbattle.game.GamePlayer;
 import com.wx3.cardbattle.game.RuleException;
+import com.wx3.cardbattle.game.Tags;
 import com.wx3.cardbattle.game.commands.ValidationResult;
 import com.wx3.cardbattle.game.gameevents.StartTurnEvent;
 import com.wx3.cardbattle.game.rules.EntityRule;
-import com.wx3.cardbattle.game.rules.PlayValidator;
+import com.wx3.cardbattle.game.rules.RuleProfiler;
 import com.wx3.samplegame.commands.PlayCardCommand;
 import com.wx3.samplegame.events.AttackEvent;
 import com.wx3.samplegame.events.DamageEvent;
@@ -86,6 +89,21 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 	public static final String CURRENT_HEALTH = "CURRENT_HEALTH";
 	public static final String ATTACKS_REMAINING = "ATTACKS_REMAINING";
 	
+	// Ids of our tags, for testing them without looking up their names:
+	public static final int MINION_TAG = Tags.register(MINION);
+	public static final int SPELL_TAG = Tags.register(SPELL);
+	public static final int IN_HAND_TAG = Tags.register(IN_HAND);
+	
+	private static final long MINION_IN_PLAY = Tags.mask(MINION, IN_PLAY);
+	private static final long IN_HAND_MASK = Tags.mask(IN_HAND);
+	private static final long IN_PLAY_MASK = Tags.mask(IN_PLAY);
+	private static final long RULES_MASK = Tags.mask(RULES);
+	private static final long PLAYER_MASK = Tags.mask(PLAYER);
+	
+	static {
+		SampleRuleActions.register();
+	}
+	
 	private Map<String, List<EntityPrototype>> playerDecks = new HashMap<String, List<EntityPrototype>>();
 
 	public SampleGameInstance(GameDatastore datastore, long id) {
@@ -106,6 +124,51 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 		return clone;
 	}
 	
+	@Override
+	protected Object saveState() {
+		// Drawing cards changes the decks:
+		Map<String, List<EntityPrototype>> decks = new HashMap<String, List<EntityPrototype>>();
+		for(Map.Entry<String, List<EntityPrototype>> entry : playerDecks.entrySet()) {
+			decks.put(entry.getKey(), new ArrayList<EntityPrototype>(entry.getValue()));
+		}
+		return decks;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void restoreState(Object state) {
+		playerDecks = (Map<String, List<EntityPrototype>>) state;
+	}
+	
+	@Override
+	protected Object getJournalSetup() {
+		// The decks, as card ids:
+		Map<String, List<Integer>> decks = new HashMap<String, List<Integer>>();
+		for(Map.Entry<String, List<EntityPrototype>> entry : playerDecks.entrySet()) {
+			List<Integer> cardIds = new ArrayList<Integer>(entry.getValue().size());
+			for(EntityPrototype card : entry.getValue()) {
+				cardIds.add(card.getId());
+			}
+			decks.put(entry.getKey(), cardIds);
+		}
+		return decks;
+	}
+	
+	@Override
+	protected void restoreJournalSetup(JsonElement setup) {
+		for(Map.Entry<String, JsonElement> entry : setup.getAsJsonObject().entrySet()) {
+			List<EntityPrototype> deck = new ArrayList<EntityPrototype>();
+			for(JsonElement cardId : entry.getValue().getAsJsonArray()) {
+				EntityPrototype card = getCard(cardId.getAsInt());
+				if(card == null) {
+					throw new RuntimeException("Unknown card in journal: " + cardId);
+				}
+				deck.add(card);
+			}
+			setPlayerDeck(entry.getKey(), deck);
+		}
+	}
+	
 	@Override
 	protected SampleEntity createEntityInstance() {
 		return new SampleEntity();
@@ -130,15 +193,19 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 		}
 		// Reset the player's energy spent:
 		SampleEntity playerEntity = getPlayerEntity(getCurrentPlayer());
-		playerEntity.setVar(ENERGY_SPENT, 0);
+		playerEntity.setVar(Vars.ENERGY_SPENT.getId(), 0);
 		// Each turn players get 1 more unit of energy:
 		int currentEnergy = playerEntity.getBaseStat(ENERGY_PER_TURN);
 		playerEntity.setBaseStat(ENERGY_PER_TURN, currentEnergy + 1);
 	}
 	
 	public List<SampleEntity> getPlayerHand(GamePlayer player) {
+		EntityColumns<SampleEntity> columns = getEntityColumns();
+		if(columns != null) {
+			return columns.selectOwnedBy(player.getPlayerName(), IN_HAND_MASK, 0);
+		}
 		List<SampleEntity> hand = entities.stream().filter(
-				e -> e.getOwner() == player.getPlayerName() && e.hasTag(IN_HAND)
+				e -> e.getOwner() == player.getPlayerName() && e.hasTag(IN_HAND_TAG)
 				).collect(Collectors.toList());
 		return hand;
 	}
@@ -150,10 +217,13 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 	 * @return
 	 */
 	public List<SampleEntity> getPlayerMinions(String playerName) {
+		EntityColumns<SampleEntity> columns = getEntityColumns();
+		if(columns != null) {
+			return columns.selectOwnedBy(playerName, MINION_IN_PLAY, 0);
+		}
 		List<SampleEntity> minions = entities.stream().filter(
 				e -> e.getOwner() == playerName && 
-				e.hasTag(MINION) && 
-				e.isInPlay()
+				e.hasAllTags(MINION_IN_PLAY)
 				).collect(Collectors.toList());
 		return minions;
 	}
@@ -166,10 +236,14 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 	 * @return
 	 */
 	public List<SampleEntity> getEnemyEntities(String playerName) {
+		EntityColumns<SampleEntity> columns = getEntityColumns();
+		if(columns != null) {
+			return columns.selectNotOwnedBy(playerName, IN_PLAY_MASK, RULES_MASK);
+		}
 		List<SampleEntity> enemies = entities.stream().filter(
 				e -> (e.getOwner() != playerName) &&
 				e.isInPlay() &&
-				!e.hasTag(RULES)
+				!e.hasTag(Tags.RULES)
 				).collect(Collectors.toList());
 		
 		return enemies;
@@ -182,9 +256,13 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 	 * @return
 	 */
 	public SampleEntity getPlayerEntity(String playerName) {
+		EntityColumns<SampleEntity> columns = getEntityColumns();
 		// There should be at most one:
+		if(columns != null) {
+			return columns.findOwnedBy(playerName, PLAYER_MASK);
+		}
 		return entities.stream().filter(
-				e -> e.getOwner() == playerName && e.hasTag(PLAYER)).findFirst().orElse(null);
+				e -> e.getOwner() == playerName && e.hasTag(Tags.PLAYER)).findFirst().orElse(null);
 	}
 	
 	public SampleEntity getPlayerEntity(GamePlayer player) {
@@ -201,7 +279,7 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 		playerEntity.setTag(IN_PLAY);
 		
 		playerEntity.setBaseStat(MAX_HEALTH, 100);
-		playerEntity.setVar(CURRENT_HEALTH, playerEntity.getStat(MAX_HEALTH));
+		playerEntity.setVar(Vars.CURRENT_HEALTH.getId(), playerEntity.getStat(Stats.MAX_HEALTH.getId()));
 		playerEntity.setOwner(player.getPlayerName());
 		// Eventually player rules should move out of here into the database/bootstrap:
 		String s2 = "if(entity.getOwner() == getCurrentPlayer(event.getTurn()).getPlayerName()) {"
@@ -253,7 +331,7 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 			GameEntity entity = instantiatePrototype(card);
 			entity.setTag(IN_HAND);
 			entity.setOwner(playerName);
-			addEvent(new DrawCardEvent(playerName, entity, cause));
+			addEvent(DrawCardEvent.obtain(this, playerName, entity, cause));
 			return entity;
 		} else {
 			logger.info("Hand is empty.");
@@ -331,12 +409,12 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 		if(!target.isInPlay()) {
 			throw new RuleException("Target is not in play");
 		}
-		int attackerAttack = attacker.getStat(ATTACK);
-		int targetAttack = target.getStat(ATTACK);
+		int attackerAttack = attacker.getStat(Stats.ATTACK.getId());
+		int targetAttack = target.getStat(Stats.ATTACK.getId());
 		if(attackerAttack <= 0) {
 			throw new RuleException("Attacker has no attack value");
 		}
-		AttackEvent event = new AttackEvent(attacker, target);
+		AttackEvent event = AttackEvent.obtain(this, attacker, target);
 		addEvent(event);
 		damageEntity(target, attackerAttack, attacker);
 		damageEntity(attacker, targetAttack, target);
@@ -388,7 +466,7 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 		int currentHealth = entity.getCurrentHealth();
 		currentHealth -= damage;
 		entity.setCurrentHealth(currentHealth);
-		addEvent(new DamageEvent(entity, damage, cause));
+		addEvent(DamageEvent.obtain(this, entity, damage, cause));
 		if(currentHealth <= 0) {
 			killEntity(entity);
 		}
@@ -409,29 +487,32 @@ public class SampleGameInstance extends GameInstance<SampleEntity> {
 	}
 	
 	/**
-	 * Test whether the PlayCardCommand is valid. 
+	 * Test whether the PlayCardCommand is valid. Synchronized like handleCommand,
+	 * since validation runs in the game's rule context.
 	 * 
 	 * @param result
 	 * @param command
 	 */
-	public void validatePlayCard(ValidationResult result, PlayCardCommand command) {
+	public synchronized void validatePlayCard(ValidationResult result, PlayCardCommand command) {
 		SampleEntity cardEntity = getEntity(command.getEntityId());
 		EntityPrototype card = cardEntity.getCreatingCard();
 		// If the command's card has no validator, we don't need to do anything
 		if(card.getValidator() == null) return;
+		RuleProfiler profiler = RuleProfiler.getInstance();
+		long start = profiler.isEnabled() ? System.nanoTime() : 0;
 		try {
 			SampleEntity target = getEntity(command.getTargetId());
-			scriptScope.put("target", target);
-			scriptScope.put("rules", this);
-			scriptScope.put("error", null);
-			PlayValidator validator = card.getValidator();
-			getScriptEngine().eval(validator.getScript(), scriptContext);
-			if(scriptScope.get("error") != null) {
-				result.addError(scriptScope.get("error").toString());
+			String error = getRuleContext().validate(card.getValidator(), target);
+			if(error != null) {
+				result.addError(error);
+			}
+		} catch (final RuleException ex) {
+			result.addError("Scripting exception: " + ex.getMessage());
+		} finally {
+			if(profiler.isEnabled()) {
+				profiler.record(RuleProfiler.Kind.VALIDATOR, card.getValidator().getId(), System.nanoTime() - start);
 			}
-		} catch (final ScriptException se) {
-			result.addError("Scripting exception: " + se.getMessage());
-		} 
+		}
 	}
 	
 	public void trace(String trace) {
@@ -53,6 +53,9 @@ import com.wx3.cardbattle.server.MessageHandler;
  */
 public class SampleGameServer extends GameServer {
 	
+	// The test game's second player is played by the AI:
+	static final String AI_PLAYER_NAME = "badguy";
+	
 	private AIManager aimanager;
 	
 	private CommandFactory commandFactory;
@@ -64,15 +67,25 @@ public class SampleGameServer extends GameServer {
 	public SampleGameServer(GameDatastore datastore) {
 		super(datastore);
 		this.commandFactory = new SampleGameCommandFactory();
+		// Create a new AI manager that updates every 1 second. It's created 
+		// here, so AIs of recovered games can be registered before start:
+		aimanager = new AIManager(1);
 	}
 	
 	@Override
 	public void start() {
 		super.start();
-		// Create a new AI manager that updates every 1 second:
-		aimanager = new AIManager(1);
 		aimanager.start();
 	}
+	
+	@Override
+	protected void gameRecovered(GameInstance<? extends GameEntity> game) {
+		for(GamePlayer player : game.getPlayers()) {
+			if(AI_PLAYER_NAME.equals(player.getPlayerName())) {
+				connectAI(player);
+			}
+		}
+	}
 
 	@Override
 	protected GameInstance<? extends GameEntity> createGame(long id) {
@@ -99,12 +112,9 @@ public class SampleGameServer extends GameServer {
     	for(PlayerAuthtoken token : authtokens) {
     		playerTokens.put(token.getPlayerName(), token.getAuthtoken());
     	}
-    	String p2Token = playerTokens.get("badguy");
+    	String p2Token = playerTokens.get(AI_PLAYER_NAME);
     	try {
-			GamePlayer p2 = authenticate(p2Token);
-			SampleGameAI ai = new SampleGameAI(p2);
-			p2.connect(ai);
-			aimanager.registerAI(ai);
+			connectAI(authenticate(p2Token));
 		} catch (AuthenticationException e) {
 			e.printStackTrace();
 		}
@@ -113,9 +123,15 @@ public class SampleGameServer extends GameServer {
     	messageHandler.handleMessage(message);
 	}
 	
+	private void connectAI(GamePlayer player) {
+		SampleGameAI ai = new SampleGameAI(player);
+		player.connect(ai);
+		aimanager.registerAI(ai);
+	}
+	
 	public List<PlayerAuthtoken> createTestGame() {
 		User user1 = datastore.getUser("goodguy");
-		User user2 = datastore.getUser("badguy");
+		User user2 = datastore.getUser(AI_PLAYER_NAME);
 		
 		if(user1 == null || user2 == null) {
 			throw new RuntimeException("The test users 'goodguy' and 'badguy' don't exist");
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import static com.wx3.cardbattle.game.rules.NativeActions.*;
+
+import java.util.Arrays;
+
+import com.wx3.cardbattle.game.gameevents.EventTypes;
+import com.wx3.cardbattle.game.rules.NativeActions;
+import com.wx3.cardbattle.game.rules.RuleDependencies;
+import com.wx3.samplegame.events.AttackEvent;
+import com.wx3.samplegame.events.DamageEvent;
+import com.wx3.samplegame.events.DrawCardEvent;
+import com.wx3.samplegame.events.GameOverEvent;
+import com.wx3.samplegame.events.KilledEvent;
+import com.wx3.samplegame.events.PlayCardEvent;
+import com.wx3.samplegame.events.SummonMinionEvent;
+
+/**
+ * Registers the sample game's native rule actions, so that the most common 
+ * rule scripts can run without the script engine:
+ * <ul>
+ * <li>DAMAGE &lt;target&gt; &lt;amount&gt;</li>
+ * <li>HEAL &lt;target&gt; &lt;amount&gt;</li>
+ * <li>SUMMON &lt;card name&gt;</li>
+ * </ul>
+ * It also tells {@link RuleDependencies} which vars, stats and tags the 
+ * sample entity accessors read, and registers the sample game's events 
+ * with {@link EventTypes} so rules can be triggered by them.
+ * 
+ * @author Kevin
+ *
+ */
+public final class SampleRuleActions {
+	
+	private static boolean registered = false;
+	
+	private SampleRuleActions() {}
+	
+	/**
+	 * Register the sample game's verbs and script patterns. Safe to call 
+	 * more than once.
+	 */
+	public static synchronized void register() {
+		if(registered) return;
+		
+		NativeActions.register("DAMAGE", args -> {
+			checkArgs("DAMAGE", args, 2);
+			Target target = parseTarget(args[0]);
+			int amount = parseAmount(args[1]);
+			return (game, entity, event) -> ((SampleGameInstance) game).damageEntity(
+					(SampleEntity) target.select(entity, event), amount, entity);
+		});
+		registerPattern("damageEntity\\(" + TARGET_PATTERN + ",\\s*(\\d+),\\s*" + CAUSE_PATTERN + "\\)", 
+				m -> "DAMAGE " + targetName(m.group(1)) + " " + m.group(2));
+		
+		NativeActions.register("HEAL", args -> {
+			checkArgs("HEAL", args, 2);
+			Target target = parseTarget(args[0]);
+			int amount = parseAmount(args[1]);
+			return (game, entity, event) -> ((SampleGameInstance) game).healEntity(
+					(SampleEntity) target.select(entity, event), amount);
+		});
+		registerPattern("healEntity\\(" + TARGET_PATTERN + ",\\s*(\\d+)\\)", 
+				m -> "HEAL " + targetName(m.group(1)) + " " + m.group(2));
+		
+		// Card names can contain spaces, so the name is the rest of the declaration:
+		NativeActions.register("SUMMON", args -> {
+			checkArgs("SUMMON", args, 1);
+			String cardName = String.join(" ", Arrays.asList(args));
+			return (game, entity, event) -> ((SampleGameInstance) game).summonMinion(entity.getOwner(), cardName);
+		});
+		registerPattern("summonMinion\\(entity\\.getOwner\\(\\),\\s*['\"]([^'\"]+)['\"]\\)", 
+				m -> "SUMMON " + m.group(1));
+		
+		// Entity accessors scripts can use, for analyzing buff dependencies:
+		RuleDependencies.registerAccessor("getCurrentHealth", SampleGameInstance.CURRENT_HEALTH);
+		RuleDependencies.registerAccessor("getMaxHealth", SampleGameInstance.MAX_HEALTH);
+		RuleDependencies.registerAccessor("getCost", SampleGameInstance.COST);
+		RuleDependencies.registerAccessor("getEnergy", 
+				SampleGameInstance.ENERGY_PER_TURN, SampleGameInstance.ENERGY_SPENT);
+		RuleDependencies.registerAccessor("getAttacksPerTurn", SampleGameInstance.ATTACKS_PER_TURN);
+		RuleDependencies.registerAccessor("getAttacksRemaining", SampleGameInstance.ATTACKS_REMAINING);
+		RuleDependencies.registerAccessor("isInHand", SampleGameInstance.IN_HAND);
+		RuleDependencies.registerAccessor("isMinion", SampleGameInstance.MINION);
+		
+		EventTypes.register(AttackEvent.class);
+		EventTypes.register(DamageEvent.class);
+		EventTypes.register(DrawCardEvent.class);
+		EventTypes.register(GameOverEvent.class);
+		EventTypes.register(KilledEvent.class);
+		EventTypes.register(PlayCardEvent.class);
+		EventTypes.register(SummonMinionEvent.class);
+		
+		registered = true;
+	}
+
+}
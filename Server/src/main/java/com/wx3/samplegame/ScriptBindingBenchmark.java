@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.game.gameevents.BuffRecalc;
+import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.cardbattle.game.rules.ScriptEngineProvider;
+
+/**
+ * Microbenchmark for the cost of running a single rule script, comparing
+ * the game bound once to its script context against rebinding the game 
+ * before every rule (which is what GameInstance used to do). 
+ * <p>
+ * Doesn't need a datastore, so it can be run directly.
+ * 
+ * @author Kevin
+ *
+ */
+public class ScriptBindingBenchmark {
+	
+	final static Logger logger = LoggerFactory.getLogger(ScriptBindingBenchmark.class);
+	
+	private static final int WARMUP_ITERATIONS = 20000;
+	private static final int ITERATIONS = 100000;
+	
+	/**
+	 * A game with its own script context, created the same way the Nashorn 
+	 * rule engine creates one.
+	 */
+	static class BenchmarkGame extends SampleGameInstance {
+		
+		private final ScriptContext scriptContext;
+		
+		BenchmarkGame() {
+			super(null, 0);
+			scriptContext = ScriptEngineProvider.getInstance().createContext(this);
+		}
+		
+		void runRule(CompiledScript script, SampleEntity entity, boolean rebind) throws ScriptException, NoSuchMethodException {
+			scriptContext.getBindings(ScriptContext.ENGINE_SCOPE).put("entity", entity);
+			if(rebind) {
+				ScriptEngine engine = ScriptEngineProvider.getInstance().getEngine();
+				Object global = engine.eval("this", scriptContext);
+				Object jsObject = engine.eval("Object", scriptContext);
+				((Invocable) engine).invokeMethod(jsObject, "bindProperties", global, this);
+			}
+			script.eval(scriptContext);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkGame game = new BenchmarkGame();
+		SampleEntity entity = game.spawnEntity();
+		entity.setBaseStat(SampleGameInstance.MAX_HEALTH, 1);
+		EntityRule rule = EntityRule.createRule(BuffRecalc.class, 
+				"buffEntity(entity, 'MAX_HEALTH', 3)", "BENCHMARK_BUFF", "Benchmark buff");
+		CompiledScript script = ScriptEngineProvider.getInstance().getScriptCache().getRuleScript(rule);
+		
+		run(game, script, entity, true, WARMUP_ITERATIONS);
+		run(game, script, entity, false, WARMUP_ITERATIONS);
+		double rebound = run(game, script, entity, true, ITERATIONS);
+		double bound = run(game, script, entity, false, ITERATIONS);
+		logger.info(String.format("Rebinding per rule: %.0f ns/rule", rebound));
+		logger.info(String.format("Bound once per game: %.0f ns/rule", bound));
+		logger.info(String.format("Per-rule binding overhead: %.0f ns", rebound - bound));
+	}
+	
+	/**
+	 * Run the rule repeatedly and return the mean time per rule in nanoseconds.
+	 */
+	private static double run(BenchmarkGame game, CompiledScript script, SampleEntity entity, 
+			boolean rebind, int iterations) throws ScriptException, NoSuchMethodException {
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			game.runRule(script, entity, rebind);
+		}
+		return (System.nanoTime() - start) / (double) iterations;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.game.EntityPrototype;
+import com.wx3.cardbattle.game.GamePlayer;
+import com.wx3.cardbattle.game.User;
+import com.wx3.cardbattle.game.commands.GameCommand;
+import com.wx3.cardbattle.game.commands.ValidationResult;
+import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.samplegame.commands.AttackCommand;
+import com.wx3.samplegame.commands.EndTurnCommand;
+import com.wx3.samplegame.commands.PlayCardCommand;
+
+/**
+ * Plays a game between two players who choose among their valid commands 
+ * with a seeded random number generator, so the same seed and card data 
+ * always produce the same game. Used to drive stress tests and benchmarks 
+ * without network connections or database writes. 
+ * 
+ * @author Kevin
+ *
+ */
+public class SimulatedMatch {
+	
+	// Each deck has this many copies of every card:
+	static final int DECK_COPIES = 3;
+	
+	// Abandon the game if nobody has won after this many commands:
+	static final int MAX_COMMANDS = 500;
+	
+	private final SampleGameInstance game;
+	private final Random random;
+	private int commandCount = 0;
+
+	public SimulatedMatch(GameDatastore datastore, long seed) {
+		random = new Random(seed);
+		game = new SampleGameInstance(datastore, seed);
+		game.addGlobalRules();
+		// Sort the cards so the decks don't depend on datastore ordering:
+		List<EntityPrototype> cards = new ArrayList<EntityPrototype>(datastore.getCards());
+		cards.sort(Comparator.comparingInt(EntityPrototype::getId));
+		for(String name : new String[]{"player1", "player2"}) {
+			GamePlayer player = new GamePlayer(new User(name));
+			game.addPlayer(player);
+			List<EntityPrototype> deck = new ArrayList<EntityPrototype>();
+			for(int i = 0; i < DECK_COPIES; i++) {
+				deck.addAll(cards);
+			}
+			Collections.shuffle(deck, random);
+			game.setPlayerDeck(player.getPlayerName(), deck);
+		}
+		game.start();
+	}
+	
+	public SampleGameInstance getGame() {
+		return game;
+	}
+	
+	public int getCommandCount() {
+		return commandCount;
+	}
+	
+	public boolean isFinished() {
+		return game.isGameOver() || commandCount >= MAX_COMMANDS;
+	}
+	
+	/**
+	 * Play until the game is finished.
+	 */
+	public void play() {
+		while(!isFinished()) {
+			step();
+		}
+	}
+	
+	/**
+	 * Have the current player choose and perform one command.
+	 * 
+	 * @return The command that was performed.
+	 */
+	public GameCommand<?> step() {
+		GameCommand<?> command = chooseCommand(game.getCurrentPlayer());
+		perform(command);
+		return command;
+	}
+	
+	/**
+	 * Have the current player perform a command, e.g. one recorded from 
+	 * another match with the same seed.
+	 * 
+	 * @param command
+	 */
+	public void perform(GameCommand<?> command) {
+		GamePlayer player = game.getCurrentPlayer();
+		command.setPlayer(player);
+		ValidationResult result = player.handleCommand(command);
+		if(!result.isValid()) {
+			throw new RuntimeException("Simulated command " + command + " was invalid: " + result.getErrors());
+		}
+		++commandCount;
+	}
+	
+	/**
+	 * Pick a random valid command for the player, ending the turn some of 
+	 * the time even if there's something else it could do.
+	 * 
+	 * @param player
+	 * @return
+	 */
+	GameCommand<?> chooseCommand(GamePlayer player) {
+		List<GameCommand<?>> choices = new ArrayList<GameCommand<?>>();
+		String playerName = player.getPlayerName();
+		List<SampleEntity> entities = game.getEntities();
+		for(SampleEntity card : game.getPlayerHand(player)) {
+			addIfValid(choices, new PlayCardCommand(card.getId(), 0), player);
+			for(SampleEntity target : entities) {
+				if(target.isInPlay()) {
+					addIfValid(choices, new PlayCardCommand(card.getId(), target.getId()), player);
+				}
+			}
+		}
+		for(SampleEntity minion : game.getPlayerMinions(playerName)) {
+			for(SampleEntity target : game.getEnemyEntities(playerName)) {
+				addIfValid(choices, new AttackCommand(minion.getId(), target.getId()), player);
+			}
+		}
+		if(choices.isEmpty() || random.nextInt(choices.size() + 1) == 0) {
+			GameCommand<?> endTurn = new EndTurnCommand();
+			endTurn.setPlayer(player);
+			return endTurn;
+		}
+		return choices.get(random.nextInt(choices.size()));
+	}
+	
+	private void addIfValid(List<GameCommand<?>> choices, PlayCardCommand command, GamePlayer player) {
+		command.setPlayer(player);
+		if(command.validate(game).isValid()) {
+			choices.add(command);
+		}
+	}
+	
+	private void addIfValid(List<GameCommand<?>> choices, AttackCommand command, GamePlayer player) {
+		command.setPlayer(player);
+		if(command.validate(game).isValid()) {
+			choices.add(command);
+		}
+	}
+	
+	/**
+	 * Describe the state of the game and all its entities, so the results of 
+	 * two matches can be compared.
+	 * 
+	 * @return
+	 */
+	public String describeState() {
+		return "turn=" + game.getTurn() + " gameOver=" + game.isGameOver() + 
+				" commands=" + commandCount + "\n" + describeEntities(game);
+	}
+	
+	/**
+	 * Describe all the entities in a game.
+	 * 
+	 * @param game
+	 * @return
+	 */
+	public static String describeEntities(SampleGameInstance game) {
+		StringBuilder sb = new StringBuilder();
+		for(SampleEntity entity : game.getEntities()) {
+			sb.append(entity.getId()).append(' ').append(entity.name)
+				.append(" owner=").append(entity.getOwner())
+				.append(" tags=").append(new TreeSet<String>(entity.getTags()))
+				.append(" stats=").append(new TreeMap<String, Integer>(entity.getCurrentStats()))
+				.append(" vars=").append(new TreeMap<String, Integer>(entity.getCurrentVars()))
+				.append(" rules=[");
+			for(EntityRule rule : entity.getRules()) {
+				sb.append(rule.getId()).append(' ');
+			}
+			sb.append("]\n");
+		}
+		return sb.toString();
+	}
+
+}
@@ -27,7 +27,12 @@
  */
 package com.wx3.samplegame;
 
+import com.wx3.cardbattle.game.EntityStats;
+
 /**
+ * The sample game's stats, with their ids in the {@link EntityStats} 
+ * registry so they can be read without looking up their names.
+ * 
  * @author Kevin
  *
  */
@@ -35,6 +40,14 @@ public enum Stats {
 
 	MAX_HEALTH,
 	ATTACK,
-	COST
+	COST,
+	ENERGY_PER_TURN,
+	ATTACKS_PER_TURN;
+	
+	private final int id = EntityStats.REGISTRY.register(name());
+	
+	public int getId() {
+		return id;
+	}
 	
 }
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.datastore.HibernateDatastore;
+import com.wx3.cardbattle.game.rules.ScriptEngineProvider;
+
+/**
+ * Measures how long a cold server takes to get to its first game: creating
+ * the datastore, starting the script engine, importing and compiling the
+ * rules, and playing the first command of a game.
+ * <p>
+ * Each start runs in a new JVM. The first starts with an empty script cache
+ * directory, so every script is compiled and stored, and the second with
+ * the same directory, so they're loaded from disk instead. Pass "once" to
+ * time a single start in this JVM, using -DscriptCacheDir if it's set.
+ *
+ * @author Kevin
+ *
+ */
+public class TimeToFirstGame {
+	
+	final static Logger logger = LoggerFactory.getLogger(TimeToFirstGame.class);
+	
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals("once")) {
+			timeStart();
+			System.exit(0);
+		}
+		File cache = Files.createTempDirectory("script-cache").toFile();
+		try {
+			logger.info("Cold start, empty script cache:");
+			runStart(cache);
+			logger.info("Warm start, scripts cached in " + cache + ":");
+			runStart(cache);
+		} finally {
+			delete(cache);
+		}
+		System.exit(0);
+	}
+	
+	private static void runStart(File cache) throws IOException, InterruptedException {
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process process = new ProcessBuilder(java,
+				"-cp", System.getProperty("java.class.path"),
+				"-D" + ScriptEngineProvider.CACHE_DIRECTORY_PROPERTY + "=" + cache.getAbsolutePath(),
+				TimeToFirstGame.class.getName(), "once")
+			.inheritIO()
+			.start();
+		if(process.waitFor() != 0) {
+			throw new RuntimeException("Start failed with exit code " + process.exitValue());
+		}
+	}
+	
+	private static void timeStart() {
+		long start = System.nanoTime();
+		GameDatastore datastore = new HibernateDatastore();
+		long datastoreTime = System.nanoTime();
+		
+		ScriptEngineProvider.getInstance();
+		long engineTime = System.nanoTime();
+		
+		Bootstrap bootstrap = new Bootstrap(datastore);
+		bootstrap.importData("csv");
+		long bootstrapTime = System.nanoTime();
+		
+		SimulatedMatch match = new SimulatedMatch(datastore, 0);
+		match.step();
+		long gameTime = System.nanoTime();
+		
+		logger.info("Script cache: " + System.getProperty(ScriptEngineProvider.CACHE_DIRECTORY_PROPERTY, "none"));
+		logger.info(String.format("Datastore: %d ms", (datastoreTime - start) / 1000000));
+		logger.info(String.format("Script engine: %d ms", (engineTime - datastoreTime) / 1000000));
+		logger.info(String.format("Import and compile rules: %d ms", (bootstrapTime - engineTime) / 1000000));
+		logger.info(String.format("First game and command: %d ms", (gameTime - bootstrapTime) / 1000000));
+		logger.info(String.format("Time to first game: %d ms (%d ms since JVM start)",
+				(gameTime - start) / 1000000, ManagementFactory.getRuntimeMXBean().getUptime()));
+	}
+	
+	private static void delete(File directory) {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				delete(file);
+			}
+		}
+		directory.delete();
+	}
+
+}
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import com.wx3.cardbattle.game.commands.ValidationResult;
 import com.wx3.samplegame.SampleEntity;
 import com.wx3.samplegame.SampleGameInstance;
+import com.wx3.samplegame.Stats;
 
 /**
  * Tell the game to attack a particular target with with a particular attacker.
@@ -52,6 +53,14 @@ public class AttackCommand extends SampleGameCommand {
 		this.attackerId = attackerId;
 		this.targetId = targetId;
 	}
+	
+	public int getAttackerId() {
+		return attackerId;
+	}
+	
+	public int getTargetId() {
+		return targetId;
+	}
 
 	/**
 	 * The attacker should exist, belong to the player, be in play,
@@ -73,7 +82,7 @@ public class AttackCommand extends SampleGameCommand {
 			if(!attacker.isInPlay()) {
 				result.addError("Attacker not in play.");
 			}
-			if(attacker.getStat(SampleGameInstance.ATTACK) <= 0) {
+			if(attacker.getStat(Stats.ATTACK.getId()) <= 0) {
 				result.addError("Attacker has no attack.");
 			}
 			if(attacker.getAttacksRemaining() <= 0) {
@@ -43,6 +43,11 @@ public final class ChatCommand extends SampleGameCommand {
 	public void execute(SampleGameInstance game) {
 		game.chat(playerName, message);
 	}
+	
+	@Override
+	public boolean changesState() {
+		return false;
+	}
 
 	public String getMessage() {
 		return message;
@@ -87,12 +87,12 @@ public class PlayCardCommand extends SampleGameCommand {
 			result.addError("Not your entity.");
 			return result;
 		}
-		if(!cardEntity.hasTag(SampleGameInstance.IN_HAND)) {
+		if(!cardEntity.isInHand()) {
 			result.addError("Entity not in hand.");
 			return result;
 		}
 		if(targetEntity != null) {
-			if(!targetEntity.hasTag(SampleGameInstance.IN_PLAY)) {
+			if(!targetEntity.isInPlay()) {
 				result.addError("Target not in play.");
 			}
 		}
@@ -24,6 +24,8 @@
 package com.wx3.samplegame.events;
 
 import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.gameevents.EventPool;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 
 /**
@@ -42,10 +44,38 @@ public final class AttackEvent extends GameEvent {
 	public transient GameEntity attacker;
 	public transient GameEntity target;
 	
+	/**
+	 * Create an AttackEvent, reusing a pooled one if the game is a simulation.
+	 */
+	public static AttackEvent obtain(GameInstance<?> game, GameEntity attacker, GameEntity target) {
+		AttackEvent event = game.isSimulation() ? EventPool.acquire(AttackEvent.class) : null;
+		if(event == null) {
+			return new AttackEvent(attacker, target);
+		}
+		event.init(attacker, target);
+		return event;
+	}
+	
 	public AttackEvent(GameEntity attacker, GameEntity target) {
+		init(attacker, target);
+	}
+	
+	private void init(GameEntity attacker, GameEntity target) {
 		this.attacker = attacker;
 		this.target = target;
 		this.attackerId = attacker.getId();
 		this.targetId = target.getId();
 	}
+	
+	@Override
+	protected boolean isPoolable() {
+		return true;
+	}
+	
+	@Override
+	protected void clear() {
+		super.clear();
+		attacker = null;
+		target = null;
+	}
 }
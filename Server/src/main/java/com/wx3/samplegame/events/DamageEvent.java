@@ -24,6 +24,8 @@
 package com.wx3.samplegame.events;
 
 import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.gameevents.EventPool;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 
 /**
@@ -40,7 +42,23 @@ public final class DamageEvent extends GameEvent {
 	
 	public transient GameEntity entity;
 	
+	/**
+	 * Create a DamageEvent, reusing a pooled one if the game is a simulation.
+	 */
+	public static DamageEvent obtain(GameInstance<?> game, GameEntity entity, int damage, GameEntity cause) {
+		DamageEvent event = game.isSimulation() ? EventPool.acquire(DamageEvent.class) : null;
+		if(event == null) {
+			return new DamageEvent(entity, damage, cause);
+		}
+		event.init(entity, damage, cause);
+		return event;
+	}
+	
 	public DamageEvent(GameEntity entity, int damage, GameEntity cause) {
+		init(entity, damage, cause);
+	}
+	
+	private void init(GameEntity entity, int damage, GameEntity cause) {
 		this.entity = entity;
 		this.entityId = entity.getId();
 		this.damage = damage;
@@ -50,4 +68,15 @@ public final class DamageEvent extends GameEvent {
 		}
 	}
 	
+	@Override
+	protected boolean isPoolable() {
+		return true;
+	}
+	
+	@Override
+	protected void clear() {
+		super.clear();
+		entity = null;
+	}
+	
 }
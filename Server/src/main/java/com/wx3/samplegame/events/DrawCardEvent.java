@@ -24,6 +24,8 @@
 package com.wx3.samplegame.events;
 
 import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.gameevents.EventPool;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 
 /**
@@ -39,7 +41,23 @@ public final class DrawCardEvent extends GameEvent {
 	@SuppressWarnings("unused")
 	private int entityId;
 
+	/**
+	 * Create a DrawCardEvent, reusing a pooled one if the game is a simulation.
+	 */
+	public static DrawCardEvent obtain(GameInstance<?> game, String playerName, GameEntity entity, GameEntity cause) {
+		DrawCardEvent event = game.isSimulation() ? EventPool.acquire(DrawCardEvent.class) : null;
+		if(event == null) {
+			return new DrawCardEvent(playerName, entity, cause);
+		}
+		event.init(playerName, entity, cause);
+		return event;
+	}
+
 	public DrawCardEvent(String playerName, GameEntity entity, GameEntity cause) {
+		init(playerName, entity, cause);
+	}
+	
+	private void init(String playerName, GameEntity entity, GameEntity cause) {
 		this.playerName = playerName;
 		this.entityId = entity.getId();
 		if(cause != null) {
@@ -47,5 +65,16 @@ public final class DrawCardEvent extends GameEvent {
 			this.causeId = cause.getId();
 		}
 	}
+	
+	@Override
+	protected boolean isPoolable() {
+		return true;
+	}
+	
+	@Override
+	protected void clear() {
+		super.clear();
+		playerName = null;
+	}
 
 }
@@ -24,6 +24,8 @@
 package com.wx3.samplegame.events;
 
 import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.gameevents.EventPool;
 import com.wx3.cardbattle.game.gameevents.GameEvent;
 
 public class KilledEvent extends GameEvent {
@@ -32,11 +34,38 @@ public class KilledEvent extends GameEvent {
 	
 	public transient GameEntity entity;
 	
+	/**
+	 * Create a KilledEvent, reusing a pooled one if the game is a simulation.
+	 */
+	public static KilledEvent obtain(GameInstance<?> game, GameEntity entity) {
+		KilledEvent event = game.isSimulation() ? EventPool.acquire(KilledEvent.class) : null;
+		if(event == null) {
+			return new KilledEvent(entity);
+		}
+		event.init(entity);
+		return event;
+	}
+	
 	public KilledEvent(GameEntity entity) {
+		init(entity);
+	}
+	
+	private void init(GameEntity entity) {
 		this.entityId = entity.getId();
 		this.entity = entity;
 	}
 	
+	@Override
+	protected boolean isPoolable() {
+		return true;
+	}
+	
+	@Override
+	protected void clear() {
+		super.clear();
+		entity = null;
+	}
+	
 	public int getEntityId() {
 		return entityId;
 	}
@@ -0,0 +1,28 @@
+package com.wx3.cardbattle;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.datastore.HibernateDatastore;
+import com.wx3.samplegame.Bootstrap;
+
+/**
+ * A datastore with the sample game's cards and rules imported, shared by
+ * the tests so the CSVs are only imported once.
+ * 
+ * @author Kevin
+ *
+ */
+public final class TestDatastore {
+	
+	private static GameDatastore datastore;
+	
+	private TestDatastore() {}
+	
+	public static synchronized GameDatastore get() {
+		if(datastore == null) {
+			datastore = new HibernateDatastore();
+			new Bootstrap(datastore).importData("csv");
+		}
+		return datastore;
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.wx3.cardbattle.game;
+
+import com.wx3.cardbattle.TestDatastore;
+import com.wx3.cardbattle.game.commands.ValidationResult;
+import com.wx3.cardbattle.game.gameevents.ChatEvent;
+import com.wx3.cardbattle.game.rules.EntityRule;
+import com.wx3.samplegame.SimulatedMatch;
+import com.wx3.samplegame.commands.ChatCommand;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks which runaway rules the {@link CommandBudget} stops: cascades of 
+ * events, and single rules that loop queueing events, both by event count
+ * and by CPU time. In each case the command should be rejected, name the 
+ * rule, and leave the game as it was. (A rule that loops without calling 
+ * back into the game can't be stopped, so there's no test for it.)
+ * 
+ * @author Kevin
+ *
+ */
+public class CommandBudgetTest extends TestCase {
+	
+	private SimulatedMatch match;
+	
+	@Override
+	protected void setUp() {
+		match = new SimulatedMatch(TestDatastore.get(), 3);
+		for(int i = 0; i < 30; i++) {
+			match.step();
+		}
+	}
+	
+	public void testCascadeIsStopped() {
+		// Every chat event causes another one:
+		ValidationResult result = chatWithRule("chat('a', 'b')");
+		assertBudgetExceeded(result, "Exceeded max events");
+	}
+	
+	public void testLoopingRuleIsStoppedByEventCount() {
+		// The rule never finishes, so only checking the budget while it runs 
+		// can stop it:
+		ValidationResult result = chatWithRule("while(true) { chat('a', 'b') }");
+		assertBudgetExceeded(result, "Exceeded max events");
+	}
+	
+	public void testLoopingRuleIsStoppedByCpuTime() {
+		match.getGame().setCommandBudget(new CommandBudget(Integer.MAX_VALUE, 50));
+		ValidationResult result = chatWithRule("while(true) { chat('a', 'b') }");
+		assertBudgetExceeded(result, "Exceeded max CPU time");
+	}
+	
+	public void testRolledBackGamePlaysOn() {
+		// Change entities before running over the budget, then play on and 
+		// check the game matches one where the command was never sent:
+		String script = "if(event.message == 'boom') {"
+				+ "var enemies = getEnemyEntities(entity.getOwner());"
+				+ "for(var i = 0; i < enemies.length; i++) { damageEntity(enemies[i], 1, entity) }"
+				+ "buffEntity(entity, 'MAX_HEALTH', 3);"
+				+ "summonMinion(entity.getOwner(), 'Measley Minion');"
+				+ "while(true) { chat('a', 'b') } }";
+		SimulatedMatch twin = new SimulatedMatch(TestDatastore.get(), 3);
+		for(int i = 0; i < 30; i++) {
+			twin.step();
+		}
+		addRule(twin, script);
+		twin.step();
+		ValidationResult result = chatWithRule(script, "boom");
+		assertBudgetExceeded(result, "Exceeded max events");
+		while(!twin.isFinished()) {
+			twin.step();
+			match.step();
+			assertEquals(twin.describeState(), match.describeState());
+		}
+		assertTrue(match.isFinished());
+	}
+	
+	private ValidationResult chatWithRule(String script) {
+		return chatWithRule(script, "hi");
+	}
+	
+	private void addRule(SimulatedMatch match, String script) {
+		EntityRule rule = EntityRule.createRule(ChatEvent.class, script, "RUNAWAY", "Runaway rule");
+		GameEntity entity = match.getGame().getPlayerEntity("player1");
+		match.getGame().addRule(entity, rule, null);
+	}
+	
+	private ValidationResult chatWithRule(String script, String message) {
+		addRule(match, script);
+		match.step();
+		String before = match.describeState();
+		int history = match.getGame().getEventHistory().size();
+		ChatCommand command = new ChatCommand();
+		command.setMessage(message);
+		ValidationResult result = match.getGame().getCurrentPlayer().handleCommand(command);
+		assertEquals("Rolled back", before, match.describeState());
+		assertEquals("History rolled back", history, match.getGame().getEventHistory().size());
+		return result;
+	}
+	
+	private void assertBudgetExceeded(ValidationResult result, String budget) {
+		assertFalse(result.isValid());
+		String errors = result.getErrors().toString();
+		assertTrue(errors, errors.contains(budget));
+		assertTrue(errors, errors.contains("RUNAWAY"));
+	}
+
+}
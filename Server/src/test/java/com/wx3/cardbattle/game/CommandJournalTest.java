@@ -0,0 +1,114 @@
+package com.wx3.cardbattle.game;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a journal with a bad record in one of its segments is only
+ * read up to that record, and that appending after recovery carries on
+ * from there rather than after the later segments.
+ *
+ * @author Kevin
+ *
+ */
+public class CommandJournalTest extends TestCase {
+
+	private static final long GAME = 1;
+	private static final int SEGMENT_SIZE = 256;
+	// Every record is "c\t" and a four digit number, after an 8 byte header:
+	private static final int RECORD_SIZE = 8 + 6;
+	// Each segment leaves room for the zero length that marks its end:
+	private static final int RECORDS_PER_SEGMENT = (SEGMENT_SIZE - 4) / RECORD_SIZE;
+
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("journal").toFile();
+	}
+
+	@Override
+	protected void tearDown() {
+		File directory = CommandJournal.getDirectory(root, GAME);
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		root.delete();
+	}
+
+	public void testReadsEverySegment() {
+		write(1000, 60);
+		assertEquals(numbers(1000, 60), read());
+	}
+
+	public void testReadStopsAtBadRecord() throws Exception {
+		write(1000, 60);
+		corrupt(1, 2);
+		assertEquals(numbers(1000, RECORDS_PER_SEGMENT + 2), read());
+	}
+
+	public void testOpenAppendsAfterBadRecord() throws Exception {
+		write(1000, 60);
+		corrupt(1, 2);
+		CommandJournal journal = CommandJournal.open(root, GAME, SEGMENT_SIZE);
+		append(journal, 2000, 30);
+		journal.close();
+		CommandJournal.flushAll();
+
+		List<Integer> expected = numbers(1000, RECORDS_PER_SEGMENT + 2);
+		expected.addAll(numbers(2000, 30));
+		assertEquals(expected, read());
+		assertTrue(new File(CommandJournal.getDirectory(root, GAME), "00000002.journal.bad").exists());
+	}
+
+	private void write(int first, int count) {
+		CommandJournal journal = CommandJournal.create(root, GAME, SEGMENT_SIZE);
+		append(journal, first, count);
+		journal.close();
+		CommandJournal.flushAll();
+	}
+
+	private void append(CommandJournal journal, int first, int count) {
+		for(int i = 0; i < count; i++) {
+			journal.append("c", first + i);
+		}
+	}
+
+	// Flip a byte in the data of one of a segment's records:
+	private void corrupt(int segment, int record) throws Exception {
+		File file = new File(CommandJournal.getDirectory(root, GAME), String.format("%08d.journal", segment));
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long position = record * RECORD_SIZE + 8 + 3;
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 1);
+		}
+	}
+
+	private List<Integer> read() {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for(CommandJournal.Entry entry : CommandJournal.read(root, GAME)) {
+			numbers.add(entry.getPayload().getAsInt());
+		}
+		return numbers;
+	}
+
+	private static List<Integer> numbers(int first, int count) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for(int i = 0; i < count; i++) {
+			numbers.add(first + i);
+		}
+		return numbers;
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.wx3.cardbattle.game;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wx3.cardbattle.game.gameevents.ChatEvent;
+import com.wx3.cardbattle.game.gameevents.GameEvent;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that an {@link EventHistory} with a small window gives back every
+ * event in order, including after it's been truncated (as a rollback does) 
+ * into the range that has already been spilled to disk.
+ * 
+ * @author Kevin
+ *
+ */
+public class EventHistoryTest extends TestCase {
+	
+	private File directory;
+	private EventHistory history;
+	// The messages of the events we expect the history to hold:
+	private List<String> expected = new ArrayList<String>();
+	
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("history").toFile();
+		history = new EventHistory(8, directory, "test");
+	}
+	
+	@Override
+	protected void tearDown() {
+		history.close();
+		directory.delete();
+	}
+	
+	public void testSpilledEventsAreReadBack() {
+		add("a", 200);
+		assertTrue(history.getSpilledCount() > 0);
+		assertHistory();
+	}
+	
+	public void testTruncateIntoSpilledEvents() {
+		add("a", 100);
+		truncate(37);
+		assertHistory();
+		add("b", 100);
+		assertHistory();
+	}
+	
+	public void testTruncateToPageBoundary() {
+		add("a", 200);
+		truncate(128);
+		add("b", 50);
+		assertHistory();
+	}
+	
+	public void testRepeatedTruncation() {
+		for(int i = 0; i < 5; i++) {
+			add("x" + i + "-", 60);
+			truncate(expected.size() - 25);
+			assertHistory();
+		}
+	}
+	
+	public void testTruncateInMemoryEvents() {
+		add("a", 100);
+		truncate(history.size() - 3);
+		add("b", 20);
+		assertHistory();
+	}
+	
+	public void testCloseDeletesSegmentFile() {
+		add("a", 100);
+		assertEquals(1, directory.listFiles().length);
+		history.close();
+		assertEquals(0, directory.listFiles().length);
+		// Later events stay in memory rather than starting a new file:
+		int spilled = history.getSpilledCount();
+		add("b", 100);
+		assertEquals(0, directory.listFiles().length);
+		assertEquals(spilled, history.getSpilledCount());
+		assertEquals(expected.size(), history.size());
+		assertEquals(100, history.getPage(expected.size() - 100, 100).size());
+	}
+	
+	private void add(String prefix, int count) {
+		for(int i = 0; i < count; i++) {
+			// Vary the length of events, so offsets into the file matter:
+			String message = prefix + i;
+			history.add(new ChatEvent("player", message));
+			expected.add(message);
+		}
+	}
+	
+	private void truncate(int size) {
+		history.truncate(size);
+		expected.subList(size, expected.size()).clear();
+	}
+	
+	private void assertHistory() {
+		assertEquals(expected.size(), history.size());
+		List<String> actual = new ArrayList<String>();
+		for(GameEvent event : history) {
+			actual.add(((ChatEvent) event).message);
+		}
+		assertEquals(expected, actual);
+		// Check reading pages that start part way through a page on disk:
+		for(int from = 0; from < expected.size(); from += 13) {
+			List<GameEvent> page = history.getPage(from, 13);
+			for(int i = 0; i < page.size(); i++) {
+				assertEquals(expected.get(from + i), ((ChatEvent) page.get(i)).message);
+			}
+		}
+	}
+
+}
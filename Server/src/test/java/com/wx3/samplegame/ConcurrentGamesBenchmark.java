@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Kevin Lin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package com.wx3.samplegame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.datastore.HibernateDatastore;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.rules.RuleEngines;
+
+/**
+ * Long stress run for playing games in parallel, kept with the tests but 
+ * not run by them (see {@link ConcurrentGamesTest} for the short version).
+ * Plays a set of seeded {@link SimulatedMatch}es one at a time, then plays 
+ * them again on a thread per core and checks that every game ends in 
+ * exactly the same state.
+ * <p>
+ * Takes optional arguments for the number of games (default 200) and 
+ * threads (default one per core), and uses the rule engine set with 
+ * -DruleEngine (default native). Exits with a non-zero status if any game 
+ * differs.
+ * 
+ * @author Kevin
+ *
+ */
+public class ConcurrentGamesBenchmark {
+	
+	final static Logger logger = LoggerFactory.getLogger(ConcurrentGamesBenchmark.class);
+
+	public static void main(String[] args) throws Exception {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		GameInstance.setDefaultRuleEngine(RuleEngines.create(System.getProperty("ruleEngine", RuleEngines.NATIVE)));
+		
+		GameDatastore datastore = new HibernateDatastore();
+		Bootstrap bootstrap = new Bootstrap(datastore);
+		bootstrap.importData("csv");
+		
+		long start = System.nanoTime();
+		String[] expected = new String[games];
+		for(int i = 0; i < games; i++) {
+			expected[i] = play(datastore, i);
+		}
+		double serialTime = (System.nanoTime() - start) / 1e9;
+		logger.info(String.format("Played %d games on 1 thread in %.2f seconds", games, serialTime));
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		start = System.nanoTime();
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for(int i = 0; i < games; i++) {
+			final long seed = i;
+			results.add(pool.submit(() -> play(datastore, seed)));
+		}
+		int mismatches = 0;
+		for(int i = 0; i < games; i++) {
+			String actual = results.get(i).get();
+			if(!expected[i].equals(actual)) {
+				logger.error("Game " + i + " differs.\nExpected:\n" + expected[i] + "Actual:\n" + actual);
+				++mismatches;
+			}
+		}
+		double parallelTime = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+		logger.info(String.format("Played %d games on %d threads in %.2f seconds", games, threads, parallelTime));
+		
+		if(mismatches > 0) {
+			logger.error(mismatches + " of " + games + " games did not match the single threaded run");
+			System.exit(1);
+		}
+		logger.info("All " + games + " games matched the single threaded run");
+		System.exit(0);
+	}
+	
+	private static String play(GameDatastore datastore, long seed) {
+		SimulatedMatch match = new SimulatedMatch(datastore, seed);
+		match.play();
+		return match.describeState();
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.wx3.samplegame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.wx3.cardbattle.TestDatastore;
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.rules.RuleEngine;
+import com.wx3.cardbattle.game.rules.RuleEngines;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that games running in parallel on the shared script engine don't
+ * see each other's state. Plays a few seeded {@link SimulatedMatch}es with 
+ * the Nashorn rule engine one at a time, then again on several threads at 
+ * once, and checks every game ends in the same state both times.
+ *
+ * @author Kevin
+ *
+ */
+public class ConcurrentGamesTest extends TestCase {
+
+	private static final int GAMES = 12;
+	private static final int THREADS = 4;
+
+	private RuleEngine defaultEngine;
+
+	@Override
+	protected void setUp() {
+		defaultEngine = GameInstance.getDefaultRuleEngine();
+		GameInstance.setDefaultRuleEngine(RuleEngines.create(RuleEngines.NASHORN));
+	}
+
+	@Override
+	protected void tearDown() {
+		GameInstance.setDefaultRuleEngine(defaultEngine);
+	}
+
+	public void testParallelGamesMatchSerial() throws Exception {
+		GameDatastore datastore = TestDatastore.get();
+		List<String> expected = new ArrayList<String>();
+		for(int i = 0; i < GAMES; i++) {
+			expected.add(play(datastore, i));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for(int i = 0; i < GAMES; i++) {
+				final long seed = i;
+				results.add(pool.submit(() -> play(datastore, seed)));
+			}
+			for(int i = 0; i < GAMES; i++) {
+				assertEquals("Game " + i, expected.get(i), results.get(i).get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static String play(GameDatastore datastore, long seed) {
+		SimulatedMatch match = new SimulatedMatch(datastore, seed);
+		match.play();
+		return match.describeState();
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.wx3.samplegame;
+
+import java.util.Random;
+
+import com.wx3.cardbattle.TestDatastore;
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.game.commands.GameCommand;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks incremental stat recalculation against full recalculation. Plays 
+ * pairs of {@link SimulatedMatch}es with the same seed, one with 
+ * incremental recalculation and phased resolution and one recalculating 
+ * every entity after every event, and compares the two games' states after
+ * every command. Since the matches choose their commands from the game 
+ * state, any difference also changes the rest of the game, so we stop at 
+ * the first mismatch.
+ * 
+ * @author Kevin
+ *
+ */
+public class IncrementalRecalculationTest extends TestCase {
+	
+	private static final int GAMES = 50;
+	
+	public void testIncrementalMatchesFull() {
+		GameDatastore datastore = TestDatastore.get();
+		// Fixed, so a failure can be reproduced:
+		Random random = new Random(12345);
+		for(int i = 0; i < GAMES; i++) {
+			long seed = random.nextLong();
+			SimulatedMatch incremental = new SimulatedMatch(datastore, seed);
+			SimulatedMatch full = new SimulatedMatch(datastore, seed);
+			full.getGame().setIncrementalRecalculation(false);
+			full.getGame().setPhasedResolution(false);
+			while(!incremental.isFinished() && !full.isFinished()) {
+				GameCommand<?> command = incremental.step();
+				full.step();
+				assertEquals("Game with seed " + seed + " after command " + 
+						incremental.getCommandCount() + " (" + command + ")", 
+						full.describeState(), incremental.describeState());
+			}
+			assertEquals("Game with seed " + seed + " finished differently", 
+					full.isFinished(), incremental.isFinished());
+		}
+	}
+	
+}
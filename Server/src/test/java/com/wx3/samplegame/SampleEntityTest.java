@@ -0,0 +1,37 @@
+package com.wx3.samplegame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.wx3.cardbattle.TestDatastore;
+import com.wx3.cardbattle.game.GamePlayer;
+import com.wx3.cardbattle.game.messages.GameEntityView;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that an entity's view keeps the stats and vars it was built with,
+ * since it's serialized after the game's lock is released.
+ *
+ * @author Kevin
+ *
+ */
+public class SampleEntityTest extends TestCase {
+
+	public void testViewIsSnapshot() {
+		SimulatedMatch match = new SimulatedMatch(TestDatastore.get(), 1);
+		GamePlayer player = match.getGame().getCurrentPlayer();
+		SampleEntity entity = (SampleEntity) player.getEntity();
+		GameEntityView view = entity.getView(player);
+		Map<String, Integer> stats = new HashMap<String, Integer>(view.stats);
+		Map<String, Integer> vars = new HashMap<String, Integer>(view.vars);
+
+		entity.setVar(Vars.CURRENT_HEALTH.getId(), vars.get(Vars.CURRENT_HEALTH.name()) - 5);
+		entity.setVar(Vars.ENERGY_SPENT.getId(), 99);
+		match.play();
+
+		assertEquals(stats, view.stats);
+		assertEquals(vars, view.vars);
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.wx3.samplegame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import com.wx3.cardbattle.TestDatastore;
+import com.wx3.cardbattle.datastore.GameDatastore;
+import com.wx3.cardbattle.datastore.PlayerAuthtoken;
+import com.wx3.cardbattle.game.CommandJournal;
+import com.wx3.cardbattle.game.GameEntity;
+import com.wx3.cardbattle.game.GameInstance;
+import com.wx3.cardbattle.game.GamePlayer;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that recovering games from their journals after a restart gives
+ * back the AI players of unfinished games, and that finished games' journals
+ * are deleted rather than replayed on every restart.
+ *
+ * @author Kevin
+ *
+ */
+public class SampleGameServerTest extends TestCase {
+
+	private GameDatastore datastore;
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		datastore = TestDatastore.get();
+		directory = Files.createTempDirectory("journals").toFile();
+		GameInstance.setJournalDirectory(directory);
+	}
+
+	@Override
+	protected void tearDown() {
+		CommandJournal.flushAll();
+		GameInstance.setJournalDirectory(null);
+		GameInstance.setKeepFinishedJournals(false);
+		for(long id : CommandJournal.findGames(directory)) {
+			File journal = CommandJournal.getDirectory(directory, id);
+			for(File file : journal.listFiles()) {
+				file.delete();
+			}
+			journal.delete();
+		}
+		directory.delete();
+	}
+
+	public void testRecoveredGameReconnectsAI() {
+		SampleGameServer server = new SampleGameServer(datastore);
+		server.createTestGame();
+		long id = CommandJournal.findGames(directory).get(0);
+		server.getGame(id).getJournal().close();
+		CommandJournal.flushAll();
+
+		SampleGameServer restarted = new SampleGameServer(datastore);
+		restarted.recoverGames();
+		GameInstance<? extends GameEntity> game = restarted.getGame(id);
+		assertNotNull(game);
+		for(GamePlayer player : game.getPlayers()) {
+			boolean ai = SampleGameServer.AI_PLAYER_NAME.equals(player.getPlayerName());
+			assertEquals(player.getPlayerName(), ai, player.isConnected());
+		}
+		game.getJournal().close();
+	}
+
+	public void testRecoveredGameKeepsAuthtokens() throws Exception {
+		SampleGameServer server = new SampleGameServer(datastore);
+		List<PlayerAuthtoken> tokens = server.createTestGame();
+		long id = tokens.get(0).getGameId();
+		server.getGame(id).getJournal().close();
+		CommandJournal.flushAll();
+
+		SampleGameServer restarted = new SampleGameServer(datastore);
+		restarted.recoverGames();
+		GameInstance<? extends GameEntity> game = restarted.getGame(id);
+		for(PlayerAuthtoken token : tokens) {
+			GamePlayer player = game.getPlayer(token.getPlayerId());
+			assertEquals(token.getAuthtoken(), player.getAuthtoken());
+			assertSame(player, restarted.authenticate(token.getAuthtoken()));
+		}
+		game.getJournal().close();
+	}
+
+	public void testRestoreAuthtoken() throws Exception {
+		SampleGameServer server = new SampleGameServer(datastore);
+		long id = server.createTestGame().get(0).getGameId();
+		GameInstance<? extends GameEntity> game = server.getGame(id);
+		GamePlayer player = game.getPlayers().get(0);
+		datastore.restoreAuthToken(player, id, "restored" + id);
+		assertSame(player, server.authenticate("restored" + id));
+		game.getJournal().close();
+	}
+
+	// As if the datastore had been reset, so its next id is a journaled game's:
+	public void testNewGamesSkipRecoveredIds() {
+		long next = datastore.newGameRecord().getGameId() + 1;
+		SimulatedMatch match = new SimulatedMatch(datastore, next);
+		match.getGame().getJournal().close();
+		CommandJournal.flushAll();
+
+		SampleGameServer restarted = new SampleGameServer(datastore);
+		restarted.recoverGames();
+		GameInstance<? extends GameEntity> recovered = restarted.getGame(next);
+		assertNotNull(recovered);
+		long id = restarted.createTestGame().get(0).getGameId();
+		assertTrue(id > next);
+		assertSame(recovered, restarted.getGame(next));
+		recovered.getJournal().close();
+		restarted.getGame(id).getJournal().close();
+	}
+
+	public void testFinishedGameDeletesJournal() {
+		SimulatedMatch match = playFinishedMatch();
+		assertNull(match.getGame().getJournal());
+		CommandJournal.flushAll();
+		assertFalse(CommandJournal.getDirectory(directory, match.getGame().getId()).exists());
+	}
+
+	public void testFinishedGameDeletesEventHistory() throws Exception {
+		File histories = Files.createTempDirectory("history").toFile();
+		int window = GameInstance.getDefaultEventHistoryWindow();
+		GameInstance.setEventHistoryDirectory(histories);
+		GameInstance.setDefaultEventHistoryWindow(8);
+		try {
+			SimulatedMatch match = playFinishedMatch();
+			assertTrue(match.getGame().getEventHistory().getSpilledCount() > 0);
+			assertEquals(0, histories.listFiles().length);
+		} finally {
+			GameInstance.setEventHistoryDirectory(null);
+			GameInstance.setDefaultEventHistoryWindow(window);
+			for(File file : histories.listFiles()) {
+				file.delete();
+			}
+			histories.delete();
+		}
+	}
+	
+	public void testRecoveryDeletesFinishedGameJournal() {
+		GameInstance.setKeepFinishedJournals(true);
+		SimulatedMatch match = playFinishedMatch();
+		match.getGame().getJournal().close();
+		CommandJournal.flushAll();
+		long id = match.getGame().getId();
+		assertTrue(CommandJournal.getDirectory(directory, id).exists());
+
+		SampleGameServer restarted = new SampleGameServer(datastore);
+		restarted.recoverGames();
+		assertNull(restarted.getGame(id));
+		CommandJournal.flushAll();
+		assertFalse(CommandJournal.getDirectory(directory, id).exists());
+	}
+
+	// Play matches until one ends with a winner, rather than being abandoned:
+	private SimulatedMatch playFinishedMatch() {
+		for(long seed = 1; seed < 20; seed++) {
+			SimulatedMatch match = new SimulatedMatch(datastore, seed);
+			match.play();
+			if(match.getGame().isGameOver()) {
+				return match;
+			}
+			match.getGame().getJournal().close();
+		}
+		fail("No match finished");
+		return null;
+	}
+
+}